@@ -0,0 +1,377 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.jebtk.bioinformatics.genomic.GenesService;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.GenomicType;
+
+/**
+ * Resolves gene and transcript symbols to regions with a case insensitive
+ * index per genome. The index of a genome is built once from every symbol in
+ * its gene database, so an unknown symbol is rejected without a lookup and a
+ * known one is looked up with its proper case. Each symbol is looked up in
+ * the gene database at most once; concurrent requests for the same symbol
+ * share one lookup and misses are remembered too. Lookups block so they
+ * should be made off the event thread, whereas
+ * {@link #getCached(Genome, String)} never blocks.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class GeneSymbolResolver {
+
+  /**
+   * The Class GeneSymbolResolverLoader.
+   */
+  private static class GeneSymbolResolverLoader {
+
+    /** The Constant INSTANCE. */
+    private static final GeneSymbolResolver INSTANCE = new GeneSymbolResolver();
+  }
+
+  /**
+   * Gets the single instance of GeneSymbolResolver.
+   *
+   * @return single instance of GeneSymbolResolver
+   */
+  public static GeneSymbolResolver getInstance() {
+    return GeneSymbolResolverLoader.INSTANCE;
+  }
+
+  /**
+   * Lookups by genome and then lower case symbol.
+   */
+  private final Map<String, Map<String, Future<GenomicRegion>>> mIndex = new ConcurrentHashMap<String, Map<String, Future<GenomicRegion>>>();
+
+  /**
+   * Every symbol in the gene database of each genome.
+   */
+  private final Map<String, List<String>> mSymbols = new ConcurrentHashMap<String, List<String>>();
+
+  /**
+   * The symbols of each genome keyed by their lower case form.
+   */
+  private final Map<String, Map<String, String>> mNames = new ConcurrentHashMap<String, Map<String, String>>();
+
+  /**
+   * Looks a symbol up in the gene database.
+   */
+  private static class LookupTask implements Callable<GenomicRegion> {
+
+    /**
+     * The member genome.
+     */
+    private final Genome mGenome;
+
+    /**
+     * The member symbol.
+     */
+    private final String mSymbol;
+
+    /**
+     * Instantiates a new lookup task.
+     *
+     * @param genome the genome
+     * @param symbol the symbol
+     */
+    public LookupTask(Genome genome, String symbol) {
+      mGenome = genome;
+      mSymbol = symbol;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.Callable#call()
+     */
+    @Override
+    public GenomicRegion call() throws IOException {
+      return GenesService.getInstance().getGenes(mGenome).getElement(mGenome, mSymbol, GenomicType.TRANSCRIPT);
+    }
+  }
+
+  /**
+   * Instantiates a new gene symbol resolver.
+   */
+  private GeneSymbolResolver() {
+    // Do nothing
+  }
+
+  /**
+   * Resolve a symbol, querying the gene database if it has not been seen
+   * before. This may block.
+   *
+   * @param genome the genome
+   * @param symbol the symbol
+   * @return the region or null if the symbol is not known.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public GenomicRegion resolve(Genome genome, String symbol) throws IOException {
+    Map<String, Future<GenomicRegion>> index = index(genome);
+
+    String key = symbol.toLowerCase();
+
+    Future<GenomicRegion> future = index.get(key);
+
+    if (future == null) {
+      String name = key;
+
+      Map<String, String> names = names(genome);
+
+      if (names != null) {
+        name = names.get(key);
+
+        // Not in the gene database
+        if (name == null) {
+          return null;
+        }
+      }
+
+      FutureTask<GenomicRegion> task = new FutureTask<GenomicRegion>(new LookupTask(genome, name));
+
+      future = index.putIfAbsent(key, task);
+
+      if (future == null) {
+        future = task;
+
+        task.run();
+      }
+    }
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      return null;
+    } catch (ExecutionException e) {
+      // Forget failed lookups so they can be retried
+      index.remove(key, future);
+
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Gets a symbol's region if it has already been resolved. Never blocks.
+   *
+   * @param genome the genome
+   * @param symbol the symbol
+   * @return the region, or null if the symbol is unknown or has not been
+   *         resolved yet.
+   */
+  public GenomicRegion getCached(Genome genome, String symbol) {
+    if (isUnknown(genome, symbol)) {
+      return null;
+    }
+
+    Future<GenomicRegion> future = index(genome).get(symbol.toLowerCase());
+
+    if (future == null || !future.isDone()) {
+      return null;
+    }
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      return null;
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether a symbol has already been resolved, including symbols
+   * that turned out to be unknown.
+   *
+   * @param genome the genome
+   * @param symbol the symbol
+   * @return true, if is cached
+   */
+  public boolean isCached(Genome genome, String symbol) {
+    if (isUnknown(genome, symbol)) {
+      return true;
+    }
+
+    Future<GenomicRegion> future = index(genome).get(symbol.toLowerCase());
+
+    return future != null && future.isDone();
+  }
+
+  /**
+   * Gets the symbols of a genome that have been resolved to a region.
+   *
+   * @param genome the genome
+   * @return the symbols in lower case.
+   */
+  public List<String> getSymbols(Genome genome) {
+    List<String> ret = new ArrayList<String>();
+
+    for (Entry<String, Future<GenomicRegion>> e : index(genome).entrySet()) {
+      if (getCached(genome, e.getKey()) != null) {
+        ret.add(e.getKey());
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Gets every symbol in the gene database of a genome, whether or not it
+   * has been resolved. The list is read once per genome and may block, so
+   * should be requested off the event thread.
+   *
+   * @param genome the genome
+   * @return the symbols
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<String> getAllSymbols(Genome genome) throws IOException {
+    String key = genome.toString();
+
+    List<String> ret = mSymbols.get(key);
+
+    if (ret == null) {
+      ret = new ArrayList<String>();
+
+      Map<String, String> names = new HashMap<String, String>();
+
+      for (String symbol : GenesService.getInstance().getGenes(genome).getIds(genome, GenomicType.TRANSCRIPT)) {
+        ret.add(symbol);
+
+        String lc = symbol.toLowerCase();
+
+        // Keep the first spelling if symbols only differ by case
+        if (!names.containsKey(lc)) {
+          names.put(lc, symbol);
+        }
+      }
+
+      ret = Collections.unmodifiableList(ret);
+
+      mNames.put(key, names);
+      mSymbols.put(key, ret);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Build the symbol index of a genome now, for example when the genome is
+   * selected, so that later lookups do not have to. This may block.
+   *
+   * @param genome the genome
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void prebuild(Genome genome) throws IOException {
+    getAllSymbols(genome);
+  }
+
+  /**
+   * Gets the symbol index of a genome, building it if necessary.
+   *
+   * @param genome the genome
+   * @return the index or null if the gene database could not list its
+   *         symbols, in which case symbols are looked up as given.
+   */
+  private Map<String, String> names(Genome genome) {
+    try {
+      getAllSymbols(genome);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    return mNames.get(genome.toString());
+  }
+
+  /**
+   * Returns true if the symbol index of a genome has been built and does not
+   * contain a symbol. Never blocks.
+   *
+   * @param genome the genome
+   * @param symbol the symbol
+   * @return true, if is unknown
+   */
+  private boolean isUnknown(Genome genome, String symbol) {
+    Map<String, String> names = mNames.get(genome.toString());
+
+    return names != null && !names.containsKey(symbol.toLowerCase());
+  }
+
+  /**
+   * Discard every resolved symbol, for example after a gene database
+   * changes.
+   */
+  public void clear() {
+    mIndex.clear();
+    mSymbols.clear();
+    mNames.clear();
+  }
+
+  /**
+   * Gets the symbol index of a genome.
+   *
+   * @param genome the genome
+   * @return the map
+   */
+  private Map<String, Future<GenomicRegion>> index(Genome genome) {
+    String key = genome.toString();
+
+    Map<String, Future<GenomicRegion>> ret = mIndex.get(key);
+
+    if (ret == null) {
+      ret = new ConcurrentHashMap<String, Future<GenomicRegion>>();
+
+      Map<String, Future<GenomicRegion>> existing = mIndex.putIfAbsent(key, ret);
+
+      if (existing != null) {
+        ret = existing;
+      }
+    }
+
+    return ret;
+  }
+}
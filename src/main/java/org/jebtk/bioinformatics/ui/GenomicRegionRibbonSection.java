@@ -36,18 +36,17 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.IOException;
 import java.text.ParseException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
+import javax.swing.SwingWorker;
 import javax.swing.Timer;
 
 import org.jebtk.bioinformatics.genomic.Chromosome;
 import org.jebtk.bioinformatics.genomic.ChromosomeService;
-import org.jebtk.bioinformatics.genomic.GenesService;
 import org.jebtk.bioinformatics.genomic.Genome;
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
 import org.jebtk.bioinformatics.genomic.GenomicRegionModel;
-import org.jebtk.bioinformatics.genomic.GenomicType;
+import org.jebtk.bioinformatics.ui.external.ucsc.TrackStoreService;
 import org.jebtk.core.event.ChangeEvent;
 import org.jebtk.core.event.ChangeListener;
 import org.jebtk.modern.AssetService;
@@ -81,11 +80,6 @@ public class GenomicRegionRibbonSection extends RibbonSection {
    */
   private static final double SHIFT = 0.05;
 
-  /**
-   * The constant TIMER_DELAY.
-   */
-  private static final int TIMER_DELAY = 10;
-
   /**
    * The constant LONG_TIMER_DELAY.
    */
@@ -139,9 +133,30 @@ public class GenomicRegionRibbonSection extends RibbonSection {
   protected GenomeModel mGenomeModel;
 
   /**
-   * The member used.
+   * The member history.
+   */
+  private RegionHistory mHistory = new RegionHistory();
+
+  /**
+   * The member navigator.
+   */
+  private RegionNavigator mNavigator;
+
+  /**
+   * The gene lookup in progress, if any.
+   */
+  private GeneLookupTask mLookup = null;
+
+  /**
+   * The member completer.
    */
-  private Set<String> mUsed = new HashSet<String>();
+  private LocationCompleter mCompleter;
+
+  /**
+   * Warms caches for where the user is likely to go next while the section
+   * is showing.
+   */
+  private RegionPrefetcher mPrefetcher = null;
 
   /**
    * The class KeyEvents.
@@ -155,7 +170,15 @@ public class GenomicRegionRibbonSection extends RibbonSection {
      */
     @Override
     public void keyPressed(KeyEvent e) {
-      // TODO Auto-generated method stub
+      if (e.isAltDown()) {
+        if (e.getKeyCode() == KeyEvent.VK_LEFT) {
+          back();
+          e.consume();
+        } else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
+          forward();
+          e.consume();
+        }
+      }
     }
 
     /*
@@ -167,6 +190,9 @@ public class GenomicRegionRibbonSection extends RibbonSection {
     public void keyReleased(KeyEvent e) {
       if (e.getKeyCode() == KeyEvent.VK_ENTER) {
         change();
+      } else if (e.getKeyChar() != KeyEvent.CHAR_UNDEFINED && e.getKeyCode() != KeyEvent.VK_BACK_SPACE
+          && e.getKeyCode() != KeyEvent.VK_DELETE && !e.isControlDown() && !e.isAltDown()) {
+        autoComplete();
       }
     }
 
@@ -288,21 +314,7 @@ public class GenomicRegionRibbonSection extends RibbonSection {
   /**
    * The class MoveLeftEvents.
    */
-  private class MoveLeftEvents extends MouseAdapter implements ActionListener {
-
-    /**
-     * The member timer.
-     */
-    private Timer mTimer;
-
-    /**
-     * Instantiates a new move left events.
-     */
-    public MoveLeftEvents() {
-      mTimer = new Timer(TIMER_DELAY, this);
-      mTimer.setInitialDelay(0);
-      mTimer.setRepeats(true);
-    }
+  private class MoveLeftEvents extends MouseAdapter {
 
     /*
      * (non-Javadoc)
@@ -311,7 +323,7 @@ public class GenomicRegionRibbonSection extends RibbonSection {
      */
     @Override
     public void mousePressed(MouseEvent e) {
-      mTimer.start();
+      mNavigator.startPan(-1, SHIFT);
     }
 
     /*
@@ -321,76 +333,92 @@ public class GenomicRegionRibbonSection extends RibbonSection {
      */
     @Override
     public void mouseReleased(MouseEvent e) {
-      mTimer.stop();
+      mNavigator.stopPan();
     }
+  }
+
+  /**
+   * The class MoveRightEvents.
+   */
+  private class MoveRightEvents extends MouseAdapter {
 
     /*
      * (non-Javadoc)
      * 
-     * @see
-     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     * @see java.awt.event.MouseAdapter#mousePressed(java.awt.event.MouseEvent)
      */
     @Override
-    public void actionPerformed(ActionEvent e) {
-      try {
-        moveLeft();
-      } catch (ParseException e1) {
-        e1.printStackTrace();
-      }
+    public void mousePressed(MouseEvent e) {
+      mNavigator.startPan(1, SHIFT);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.awt.event.MouseAdapter#mouseReleased(java.awt.event.MouseEvent)
+     */
+    @Override
+    public void mouseReleased(MouseEvent e) {
+      mNavigator.stopPan();
     }
   }
 
   /**
-   * The class MoveRightEvents.
+   * Resolves a gene symbol off the event thread and then moves to it.
    */
-  private class MoveRightEvents extends MouseAdapter implements ActionListener {
+  private class GeneLookupTask extends SwingWorker<GenomicRegion, Void> {
 
     /**
-     * The member timer.
+     * The member genome.
      */
-    private Timer mTimer;
+    private final Genome mGenome;
 
     /**
-     * Instantiates a new move right events.
+     * The member symbol.
      */
-    public MoveRightEvents() {
-      mTimer = new Timer(TIMER_DELAY, this);
-      mTimer.setInitialDelay(0);
-      mTimer.setRepeats(true);
-    }
+    private final String mSymbol;
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see java.awt.event.MouseAdapter#mousePressed(java.awt.event.MouseEvent)
+    /**
+     * Instantiates a new gene lookup task.
+     *
+     * @param genome the genome
+     * @param symbol the symbol
      */
-    @Override
-    public void mousePressed(MouseEvent e) {
-      mTimer.start();
+    public GeneLookupTask(Genome genome, String symbol) {
+      mGenome = genome;
+      mSymbol = symbol;
     }
 
     /*
      * (non-Javadoc)
      * 
-     * @see java.awt.event.MouseAdapter#mouseReleased(java.awt.event.MouseEvent)
+     * @see javax.swing.SwingWorker#doInBackground()
      */
     @Override
-    public void mouseReleased(MouseEvent e) {
-      mTimer.stop();
+    protected GenomicRegion doInBackground() throws IOException {
+      return GeneSymbolResolver.getInstance().resolve(mGenome, mSymbol);
     }
 
     /*
      * (non-Javadoc)
      * 
-     * @see
-     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     * @see javax.swing.SwingWorker#done()
      */
     @Override
-    public void actionPerformed(ActionEvent e) {
+    protected void done() {
+      // Only the most recent lookup may move the view
+      if (isCancelled() || mLookup != this) {
+        return;
+      }
+
+      mLookup = null;
+
       try {
-        moveRight();
-      } catch (ParseException e1) {
-        e1.printStackTrace();
+        go(mSymbol, get());
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } catch (ExecutionException e) {
+        e.printStackTrace();
       }
     }
   }
@@ -412,6 +440,23 @@ public class GenomicRegionRibbonSection extends RibbonSection {
 
   }
 
+  /**
+   * Clears the navigation history when the genome changes since its regions
+   * belong to the old genome.
+   */
+  private class GenomeEvents implements ChangeListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.abh.lib.event.ChangeListener#changed(org.abh.lib.event.ChangeEvent)
+     */
+    @Override
+    public void changed(ChangeEvent e) {
+      mHistory.clear();
+    }
+  }
+
   /**
    * Instantiates a new genomic region ribbon section.
    *
@@ -424,6 +469,8 @@ public class GenomicRegionRibbonSection extends RibbonSection {
 
     mModel = regionModel;
     mGenomeModel = genomeModel;
+    mNavigator = new RegionNavigator(regionModel, genomeModel);
+    mCompleter = new LocationCompleter(genomeModel);
 
     RibbonStripContainer box = new RibbonStripContainer();
 
@@ -446,6 +493,7 @@ public class GenomicRegionRibbonSection extends RibbonSection {
 
     mModel.addChangeListener(ce);
     mGenomeModel.addChangeListener(ce);
+    mGenomeModel.addChangeListener(new GenomeEvents());
 
     mZoomInButton.addMouseListener(new ZoomInEvents());
     mZoomOutButton.addMouseListener(new ZoomOutEvents());
@@ -458,6 +506,40 @@ public class GenomicRegionRibbonSection extends RibbonSection {
     refresh();
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see javax.swing.JComponent#addNotify()
+   */
+  @Override
+  public void addNotify() {
+    super.addNotify();
+
+    if (mPrefetcher == null) {
+      mPrefetcher = new RegionPrefetcher(mModel, mGenomeModel);
+    }
+
+    // Track summaries for the regions in the history are cached per visit
+    TrackStoreService.getInstance().setHistory(mHistory);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see javax.swing.JComponent#removeNotify()
+   */
+  @Override
+  public void removeNotify() {
+    if (mPrefetcher != null) {
+      mPrefetcher.dispose();
+      mPrefetcher = null;
+    }
+
+    TrackStoreService.getInstance().removeHistory(mHistory);
+
+    super.removeNotify();
+  }
+
   /**
    * Refresh.
    */
@@ -467,28 +549,108 @@ public class GenomicRegionRibbonSection extends RibbonSection {
 
   /**
    * Change.
-   *
-   * @throws ParseException the parse exception
    */
   private void change() {
-    GenomicRegion region = parse(mGenomeModel.get());
+    Genome genome = mGenomeModel.get();
+
+    String text = mLocationField.getText();
 
+    if (mLookup != null) {
+      mLookup.cancel(true);
+      mLookup = null;
+    }
+
+    if (isLocation(text)) {
+      go(text, parse(genome));
+    } else if (GeneSymbolResolver.getInstance().isCached(genome, text)) {
+      go(text, GeneSymbolResolver.getInstance().getCached(genome, text));
+    } else {
+      // Gene lookups may hit the database so they must not block the ui
+      mLookup = new GeneLookupTask(genome, text);
+      mLookup.execute();
+    }
+  }
+
+  /**
+   * Move to a region the user asked for.
+   *
+   * @param name   what the user typed.
+   * @param region the region
+   */
+  private void go(String name, GenomicRegion region) {
     if (region != null) {
       // Add the location before updating the model, since the model
       // refresh will change gene symbols to location and we want to
       // store what the user typed, not what we modified it to.
+      mCompleter.add(name);
 
-      String name = mLocationField.getText();
+      mHistory.visit(mNavigator.get(), region);
 
-      if (!mUsed.contains(name)) {
-        // mLocationField.addScrollMenuItem(name);
-        mUsed.add(name);
-      }
+      mNavigator.set(region);
+    }
+  }
 
-      mModel.set(region);
+  /**
+   * Go back to the previous region.
+   */
+  public void back() {
+    GenomicRegion region = mHistory.back(mNavigator.get());
+
+    if (region != null) {
+      mNavigator.set(region);
+    }
+  }
+
+  /**
+   * Go forward to the next region.
+   */
+  public void forward() {
+    GenomicRegion region = mHistory.forward(mNavigator.get());
+
+    if (region != null) {
+      mNavigator.set(region);
     }
   }
 
+  /**
+   * Gets the navigation history, whose visits views can use to cache images
+   * and query results for each region.
+   *
+   * @return the history
+   */
+  public RegionHistory getHistory() {
+    return mHistory;
+  }
+
+  /**
+   * Complete what the user is typing, selecting the completed part so that
+   * typing on replaces it.
+   */
+  private void autoComplete() {
+    String text = mLocationField.getText();
+
+    if (text.length() == 0 || mLocationField.getCaretPosition() != text.length()) {
+      return;
+    }
+
+    String completion = mCompleter.complete(text);
+
+    if (completion != null) {
+      mLocationField.setText(text + completion.substring(text.length()));
+      mLocationField.select(text.length(), completion.length());
+    }
+  }
+
+  /**
+   * Checks whether text is a location rather than a gene symbol.
+   *
+   * @param text the text
+   * @return true, if is location
+   */
+  private static boolean isLocation(String text) {
+    return text.toLowerCase().startsWith("chr");
+  }
+
   /**
    * Parses the.
    *
@@ -496,8 +658,6 @@ public class GenomicRegionRibbonSection extends RibbonSection {
    * @throws ParseException the parse exception
    */
   protected GenomicRegion parse(Genome genome) {
-    System.err.println("genome ribbon section");
-
     String text = mLocationField.getText().toLowerCase();
 
     GenomicRegion region = null;
@@ -524,12 +684,10 @@ public class GenomicRegionRibbonSection extends RibbonSection {
       // Genome g = GenesService.getInstance().getFirstGeneDb(genome.getAssembly());
 
       try {
-        region = GenesService.getInstance().getGenes(genome).getElement(genome, text, GenomicType.TRANSCRIPT);
+        region = GeneSymbolResolver.getInstance().resolve(genome, text);
       } catch (IOException e) {
         e.printStackTrace();
       }
-
-      System.err.println("what " + genome + " " + text + " " + region);
     }
 
     return region;
@@ -557,67 +715,8 @@ public class GenomicRegionRibbonSection extends RibbonSection {
    * Zoom.
    *
    * @param scale the scale
-   * @throws ParseException the parse exception
    */
   private void zoom(double scale) {
-    GenomicRegion region = parse(mGenomeModel.get());
-
-    if (region == null) {
-      return;
-    }
-
-    int size = ChromosomeService.getInstance().size(mGenomeModel.get(), region.mChr);
-
-    int midPoint = (region.getStart() + region.getEnd()) / 2;
-
-    int d = (int) ((region.getEnd() - region.getStart()) * scale);
-    int d2 = Math.max(d / 2, 1);
-
-    int start = (int) Math.max(Math.min(midPoint - d2, size), 1);
-    int end = (int) Math.max(Math.min(midPoint + d2, size), 1);
-
-    GenomicRegion newRegion = new GenomicRegion(region.mChr, start, end);
-
-    mModel.set(newRegion);
-  }
-
-  /**
-   * Move left.
-   *
-   * @throws ParseException the parse exception
-   */
-  private void moveLeft() throws ParseException {
-    move(-SHIFT);
-  }
-
-  /**
-   * Move right.
-   *
-   * @throws ParseException the parse exception
-   */
-  private void moveRight() throws ParseException {
-    move(SHIFT);
-  }
-
-  /**
-   * Move.
-   *
-   * @param p the p
-   * @throws ParseException the parse exception
-   */
-  private void move(double p) throws ParseException {
-    Genome genome = mGenomeModel.get();
-
-    GenomicRegion region = parse(genome);
-
-    if (region == null) {
-      return;
-    }
-
-    int shift = (int) (region.getLength() * p);
-
-    GenomicRegion newRegion = GenomicRegion.shift(genome, region, shift);
-
-    mModel.set(newRegion);
+    mNavigator.zoom(scale);
   }
 }
@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.ChromosomeService;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.core.event.ChangeEvent;
+import org.jebtk.core.event.ChangeListener;
+
+/**
+ * Suggests completions for the location field from the chromosome names and
+ * gene symbols of the current genome and locations the user has entered. The
+ * words are held in a {@link PrefixIndex} that is built in the background as
+ * soon as the completer is created and rebuilt, again in the background, when
+ * the genome changes or new words are added. Until an index is ready no
+ * completions are offered, so typing never waits on it. Methods must be
+ * called on the event thread.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class LocationCompleter {
+
+  /**
+   * The member genome model.
+   */
+  private final GenomeModel mGenomeModel;
+
+  /**
+   * Words the user has entered.
+   */
+  private final Set<String> mHistory = new LinkedHashSet<String>();
+
+  /**
+   * The member index.
+   */
+  private PrefixIndex mIndex = null;
+
+  /**
+   * Whether the index is out of date.
+   */
+  private boolean mDirty = true;
+
+  /**
+   * The build in progress, if any.
+   */
+  private BuildTask mTask = null;
+
+  /**
+   * Builds the index in the background.
+   */
+  private class BuildTask extends SwingWorker<PrefixIndex, Void> {
+
+    /**
+     * The member genome.
+     */
+    private final Genome mGenome;
+
+    /**
+     * The member history.
+     */
+    private final List<String> mWords;
+
+    /**
+     * Instantiates a new builds the task.
+     *
+     * @param genome  the genome
+     * @param history the history
+     */
+    public BuildTask(Genome genome, List<String> history) {
+      mGenome = genome;
+      mWords = history;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#doInBackground()
+     */
+    @Override
+    protected PrefixIndex doInBackground() {
+      for (Chromosome chr : ChromosomeService.getInstance().chrs(mGenome)) {
+        mWords.add(chr.toString());
+      }
+
+      try {
+        mWords.addAll(GeneSymbolResolver.getInstance().getAllSymbols(mGenome));
+      } catch (IOException e) {
+        e.printStackTrace();
+
+        // Fall back to the symbols that have already been looked up
+        mWords.addAll(GeneSymbolResolver.getInstance().getSymbols(mGenome));
+      }
+
+      return new PrefixIndex(mWords);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#done()
+     */
+    @Override
+    protected void done() {
+      if (mTask != this) {
+        return;
+      }
+
+      mTask = null;
+
+      try {
+        mIndex = get();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } catch (ExecutionException e) {
+        e.printStackTrace();
+      }
+
+      // Words may have been added while building
+      if (mDirty) {
+        rebuild();
+      }
+    }
+  }
+
+  /**
+   * Rebuild when the genome changes.
+   */
+  private class GenomeEvents implements ChangeListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.abh.lib.event.ChangeListener#changed(org.abh.lib.event.ChangeEvent)
+     */
+    @Override
+    public void changed(ChangeEvent e) {
+      // Symbols of the old genome must not be suggested
+      mIndex = null;
+      mDirty = true;
+
+      if (mTask != null) {
+        mTask.cancel(true);
+        mTask = null;
+      }
+
+      rebuild();
+    }
+  }
+
+  /**
+   * Instantiates a new location completer.
+   *
+   * @param genomeModel the genome model
+   */
+  public LocationCompleter(GenomeModel genomeModel) {
+    mGenomeModel = genomeModel;
+
+    mGenomeModel.addChangeListener(new GenomeEvents());
+
+    // Load the chromosomes and symbols now so that completions are ready
+    // by the time the user types
+    rebuild();
+  }
+
+  /**
+   * Add a word the user has entered.
+   *
+   * @param word the word
+   */
+  public void add(String word) {
+    if (mHistory.add(word)) {
+      mDirty = true;
+    }
+  }
+
+  /**
+   * Complete a prefix. Returns immediately; if the index is not ready or out
+   * of date a build is started in the background.
+   *
+   * @param prefix the prefix
+   * @return the completion or null.
+   */
+  public String complete(String prefix) {
+    if (mDirty) {
+      rebuild();
+    }
+
+    return mIndex != null ? mIndex.complete(prefix) : null;
+  }
+
+  /**
+   * Start a background build unless one is already running.
+   */
+  private void rebuild() {
+    if (mTask != null) {
+      return;
+    }
+
+    mDirty = false;
+
+    mTask = new BuildTask(mGenomeModel.get(), new ArrayList<String>(mHistory));
+    mTask.execute();
+  }
+}
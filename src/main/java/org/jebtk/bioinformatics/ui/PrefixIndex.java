@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable, case insensitive prefix index over a set of words held as a
+ * sorted array. Every word starting with a prefix lies in one contiguous
+ * run of the array which is found with two binary searches, so lookups take
+ * microseconds even for hundreds of thousands of words.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class PrefixIndex {
+
+  /**
+   * The member keys, lower case and sorted.
+   */
+  private final String[] mKeys;
+
+  /**
+   * The words in the same order as the keys.
+   */
+  private final String[] mWords;
+
+  /**
+   * The number of distinct words.
+   */
+  private final int mSize;
+
+  /**
+   * Instantiates a new prefix index.
+   *
+   * @param words the words
+   */
+  public PrefixIndex(Collection<String> words) {
+    String[][] entries = new String[words.size()][];
+
+    int n = 0;
+
+    for (String word : words) {
+      entries[n++] = new String[] { word.toLowerCase(), word };
+    }
+
+    Arrays.sort(entries, 0, n, new EntryComparator());
+
+    // Drop duplicate keys keeping the first spelling
+    mKeys = new String[n];
+    mWords = new String[n];
+
+    int m = 0;
+
+    for (int i = 0; i < n; ++i) {
+      if (m == 0 || !entries[i][0].equals(mKeys[m - 1])) {
+        mKeys[m] = entries[i][0];
+        mWords[m] = entries[i][1];
+        ++m;
+      }
+    }
+
+    mSize = m;
+  }
+
+  /**
+   * Orders entries by key.
+   */
+  private static class EntryComparator implements Comparator<String[]> {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public int compare(String[] e1, String[] e2) {
+      return e1[0].compareTo(e2[0]);
+    }
+  }
+
+  /**
+   * Size.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Returns the first word, alphabetically, that starts with a prefix and is
+   * longer than it. Nothing is returned if the prefix is itself a word, so
+   * that, for example, chr1 is not completed to chr10.
+   *
+   * @param prefix the prefix
+   * @return the completion or null if there is none.
+   */
+  public String complete(String prefix) {
+    String key = prefix.toLowerCase();
+
+    int i = lowerBound(key);
+
+    if (i == mSize || mKeys[i].equals(key)) {
+      return null;
+    }
+
+    return mKeys[i].startsWith(key) ? mWords[i] : null;
+  }
+
+  /**
+   * Returns words starting with a prefix in alphabetical order.
+   *
+   * @param prefix the prefix
+   * @param max    the maximum number of words to return.
+   * @return the list
+   */
+  public List<String> startsWith(String prefix, int max) {
+    String key = prefix.toLowerCase();
+
+    int first = lowerBound(key);
+    int last = Math.min(upperBound(key, first), first + max);
+
+    List<String> ret = new ArrayList<String>(last - first);
+
+    for (int i = first; i < last; ++i) {
+      ret.add(mWords[i]);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Index of the first key not less than a key.
+   *
+   * @param key the key
+   * @return the int
+   */
+  private int lowerBound(String key) {
+    int lo = 0;
+    int hi = mSize;
+
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+
+      if (mKeys[mid].compareTo(key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return lo;
+  }
+
+  /**
+   * Index after the last key starting with a prefix.
+   *
+   * @param prefix the prefix
+   * @param first  the index of the first key not less than the prefix.
+   * @return the int
+   */
+  private int upperBound(String prefix, int first) {
+    int lo = first;
+    int hi = mSize;
+
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+
+      if (mKeys[mid].startsWith(prefix)) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+
+    return lo;
+  }
+}
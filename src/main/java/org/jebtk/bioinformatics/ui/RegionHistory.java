@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+
+/**
+ * Back and forward navigation history of resolved regions. Each visit keeps
+ * a small cache in which views can store rendered images and query results
+ * for its region, so returning to a recent locus can reuse them instead of
+ * resolving and drawing everything again. {@link
+ * org.jebtk.bioinformatics.ui.external.ucsc.TrackStoreService} caches track
+ * summaries here. Views may query the history from any thread.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class RegionHistory {
+
+  /**
+   * The maximum number of regions kept in each direction.
+   */
+  public static final int MAX_HISTORY = 50;
+
+  /**
+   * The maximum number of items cached per visit.
+   */
+  public static final int MAX_ITEMS = 32;
+
+  /**
+   * The member back.
+   */
+  private final Deque<Visit> mBack = new ArrayDeque<Visit>();
+
+  /**
+   * The member forward.
+   */
+  private final Deque<Visit> mForward = new ArrayDeque<Visit>();
+
+  /**
+   * The member current.
+   */
+  private Visit mCurrent = null;
+
+  /**
+   * A region in the history and its cache.
+   */
+  public static class Visit {
+
+    /**
+     * The member region.
+     */
+    private final GenomicRegion mRegion;
+
+    /**
+     * The member cache.
+     */
+    private final ItemMap mItems = new ItemMap();
+
+    /**
+     * Instantiates a new visit.
+     *
+     * @param region the region
+     */
+    private Visit(GenomicRegion region) {
+      mRegion = region;
+    }
+
+    /**
+     * Gets the region.
+     *
+     * @return the region
+     */
+    public GenomicRegion getRegion() {
+      return mRegion;
+    }
+
+    /**
+     * Gets a cached item.
+     *
+     * @param key the key
+     * @return the item or null.
+     */
+    public synchronized Object get(Object key) {
+      return mItems.get(key);
+    }
+
+    /**
+     * Cache an item such as a rendered image or query result. Keys must
+     * identify everything the item depends on other than the region.
+     *
+     * @param key  the key
+     * @param item the item
+     */
+    public synchronized void put(Object key, Object item) {
+      mItems.put(key, item);
+    }
+  }
+
+  /**
+   * Access ordered map that drops the least recently used item once full.
+   */
+  private static class ItemMap extends LinkedHashMap<Object, Object> {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new item map.
+     */
+    public ItemMap() {
+      super(16, 0.75f, true);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+     */
+    @Override
+    protected boolean removeEldestEntry(Entry<Object, Object> eldest) {
+      return size() > MAX_ITEMS;
+    }
+  }
+
+  /**
+   * Record moving from one region to another, for example when the user
+   * enters a new location. Clears the forward history.
+   *
+   * @param from the region being left.
+   * @param to   the region
+   */
+  public synchronized void visit(GenomicRegion from, GenomicRegion to) {
+    if (from != null && !from.equals(to)) {
+      push(mBack, visit(from));
+    }
+
+    mForward.clear();
+
+    mCurrent = visit(to);
+  }
+
+  /**
+   * Go back.
+   *
+   * @param from the region being left.
+   * @return the region to show, or null if there is no history.
+   */
+  public synchronized GenomicRegion back(GenomicRegion from) {
+    if (mBack.isEmpty()) {
+      return null;
+    }
+
+    push(mForward, visit(from));
+
+    mCurrent = mBack.pop();
+
+    return mCurrent.getRegion();
+  }
+
+  /**
+   * Go forward.
+   *
+   * @param from the region being left.
+   * @return the region to show, or null if there is no history.
+   */
+  public synchronized GenomicRegion forward(GenomicRegion from) {
+    if (mForward.isEmpty()) {
+      return null;
+    }
+
+    push(mBack, visit(from));
+
+    mCurrent = mForward.pop();
+
+    return mCurrent.getRegion();
+  }
+
+  /**
+   * Can go back.
+   *
+   * @return true, if successful
+   */
+  public synchronized boolean canGoBack() {
+    return !mBack.isEmpty();
+  }
+
+  /**
+   * Can go forward.
+   *
+   * @return true, if successful
+   */
+  public synchronized boolean canGoForward() {
+    return !mForward.isEmpty();
+  }
+
+  /**
+   * Forget every region, and everything cached for them, for example because
+   * the genome has changed and the regions no longer refer to it.
+   */
+  public synchronized void clear() {
+    mBack.clear();
+    mForward.clear();
+
+    mCurrent = null;
+  }
+
+  /**
+   * Gets the visit for a region so that views can use its cache.
+   *
+   * @param region the region
+   * @return the visit or null if the region is not in the history.
+   */
+  public synchronized Visit getVisit(GenomicRegion region) {
+    if (mCurrent != null && mCurrent.getRegion().equals(region)) {
+      return mCurrent;
+    }
+
+    for (Visit visit : mBack) {
+      if (visit.getRegion().equals(region)) {
+        return visit;
+      }
+    }
+
+    for (Visit visit : mForward) {
+      if (visit.getRegion().equals(region)) {
+        return visit;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Gets the visit for a region, reusing the current one if it is for the
+   * same region so that its cache is kept.
+   *
+   * @param region the region
+   * @return the visit
+   */
+  private Visit visit(GenomicRegion region) {
+    if (mCurrent != null && mCurrent.getRegion().equals(region)) {
+      return mCurrent;
+    }
+
+    return new Visit(region);
+  }
+
+  /**
+   * Push a visit, dropping the oldest once the history is full.
+   *
+   * @param stack the stack
+   * @param visit the visit
+   */
+  private static void push(Deque<Visit> stack, Visit visit) {
+    stack.push(visit);
+
+    while (stack.size() > MAX_HISTORY) {
+      stack.removeLast();
+    }
+  }
+}
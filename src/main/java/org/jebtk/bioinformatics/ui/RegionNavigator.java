@@ -0,0 +1,338 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+import org.jebtk.bioinformatics.genomic.ChromosomeService;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.GenomicRegionModel;
+import org.jebtk.core.event.ChangeEvent;
+import org.jebtk.core.event.ChangeListener;
+
+/**
+ * Pans and zooms a region model. The navigator keeps the current region in
+ * memory so steps never re-parse the location text, and coalesces steps so
+ * that the model, and therefore every listener and repaint, is updated at
+ * most once per frame. Holding a pan button moves the region with a
+ * velocity that ramps up the longer it is held rather than in fixed jumps.
+ * Methods must be called on the event thread.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class RegionNavigator {
+
+  /**
+   * Minimum time between model updates, roughly one frame.
+   */
+  public static final int FRAME_DELAY = 16;
+
+  /**
+   * How long a pan button must be held before continuous motion starts.
+   */
+  private static final long HOLD_DELAY = 200;
+
+  /**
+   * Initial pan velocity in region lengths per second.
+   */
+  private static final double BASE_VELOCITY = 0.5;
+
+  /**
+   * How much the pan velocity increases per second held.
+   */
+  private static final double ACCELERATION = 1;
+
+  /**
+   * The constant MAX_VELOCITY.
+   */
+  private static final double MAX_VELOCITY = 4;
+
+  /**
+   * The member model.
+   */
+  private final GenomicRegionModel mModel;
+
+  /**
+   * The member genome model.
+   */
+  private final GenomeModel mGenomeModel;
+
+  /**
+   * The member region.
+   */
+  private GenomicRegion mRegion;
+
+  /**
+   * Bases of pan not yet applied because they are less than one base.
+   */
+  private double mPendingShift = 0;
+
+  /**
+   * The member pan direction, -1, 0 or 1.
+   */
+  private int mDirection = 0;
+
+  /**
+   * When the pan button was pressed.
+   */
+  private long mPanStart;
+
+  /**
+   * When the pan was last advanced.
+   */
+  private long mLastTick;
+
+  /**
+   * The member frame timer.
+   */
+  private final Timer mFrameTimer;
+
+  /**
+   * Whether the model is being updated by the navigator.
+   */
+  private boolean mUpdating = false;
+
+  /**
+   * Pushes the current region to the model once per frame.
+   */
+  private class FrameEvents implements ActionListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      if (mDirection != 0) {
+        advance();
+      }
+
+      flush();
+
+      if (mDirection == 0) {
+        mFrameTimer.stop();
+      }
+    }
+  }
+
+  /**
+   * Keeps the navigator in step with changes made elsewhere.
+   */
+  private class ModelEvents implements ChangeListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.abh.lib.event.ChangeListener#changed(org.abh.lib.event.ChangeEvent)
+     */
+    @Override
+    public void changed(ChangeEvent e) {
+      if (!mUpdating) {
+        mRegion = mModel.get();
+        mPendingShift = 0;
+      }
+    }
+  }
+
+  /**
+   * Instantiates a new region navigator.
+   *
+   * @param model       the model
+   * @param genomeModel the genome model
+   */
+  public RegionNavigator(GenomicRegionModel model, GenomeModel genomeModel) {
+    mModel = model;
+    mGenomeModel = genomeModel;
+    mRegion = model.get();
+
+    mFrameTimer = new Timer(FRAME_DELAY, new FrameEvents());
+    mFrameTimer.setInitialDelay(FRAME_DELAY);
+    mFrameTimer.setRepeats(true);
+
+    mModel.addChangeListener(new ModelEvents());
+  }
+
+  /**
+   * Gets the current region, which may be ahead of the model by up to one
+   * frame.
+   *
+   * @return the genomic region
+   */
+  public GenomicRegion get() {
+    return mRegion;
+  }
+
+  /**
+   * Go to a region immediately.
+   *
+   * @param region the region
+   */
+  public void set(GenomicRegion region) {
+    mRegion = region;
+    mPendingShift = 0;
+
+    flush();
+  }
+
+  /**
+   * Shift the region by a fraction of its length. Negative fractions move
+   * left.
+   *
+   * @param p the p
+   */
+  public void move(double p) {
+    if (mRegion == null) {
+      return;
+    }
+
+    shift(mRegion.getLength() * p);
+  }
+
+  /**
+   * Scale the region about its mid point.
+   *
+   * @param scale the scale
+   */
+  public void zoom(double scale) {
+    if (mRegion == null) {
+      return;
+    }
+
+    int size = ChromosomeService.getInstance().size(mGenomeModel.get(), mRegion.mChr);
+
+    int midPoint = (mRegion.getStart() + mRegion.getEnd()) / 2;
+
+    int d = (int) ((mRegion.getEnd() - mRegion.getStart()) * scale);
+    int d2 = Math.max(d / 2, 1);
+
+    int start = (int) Math.max(Math.min(midPoint - d2, size), 1);
+    int end = (int) Math.max(Math.min(midPoint + d2, size), 1);
+
+    mRegion = new GenomicRegion(mRegion.mChr, start, end);
+    mPendingShift = 0;
+
+    schedule();
+  }
+
+  /**
+   * Start panning, for example when a pan button is pressed. The region
+   * moves one step immediately and then, if still held, continuously with
+   * increasing speed.
+   *
+   * @param direction -1 for left and 1 for right.
+   * @param step      the size of the first step as a fraction of the region.
+   */
+  public void startPan(int direction, double step) {
+    mDirection = direction;
+    mPanStart = System.currentTimeMillis();
+    mLastTick = mPanStart;
+
+    move(direction * step);
+  }
+
+  /**
+   * Stop panning.
+   */
+  public void stopPan() {
+    mDirection = 0;
+  }
+
+  /**
+   * Advance a held pan by the time elapsed since the last frame.
+   */
+  private void advance() {
+    long now = System.currentTimeMillis();
+
+    long held = now - mPanStart - HOLD_DELAY;
+
+    if (held > 0 && mRegion != null) {
+      double velocity = Math.min(MAX_VELOCITY, BASE_VELOCITY + ACCELERATION * held / 1000.0);
+
+      double dt = Math.min(now - mLastTick, held) / 1000.0;
+
+      shift(mDirection * velocity * dt * mRegion.getLength());
+    }
+
+    mLastTick = now;
+  }
+
+  /**
+   * Shift by a number of bases, carrying fractions of a base over to the
+   * next step.
+   *
+   * @param bases the bases
+   */
+  private void shift(double bases) {
+    mPendingShift += bases;
+
+    int shift = (int) mPendingShift;
+
+    if (shift != 0) {
+      Genome genome = mGenomeModel.get();
+
+      mRegion = GenomicRegion.shift(genome, mRegion, shift);
+
+      mPendingShift -= shift;
+    }
+
+    schedule();
+  }
+
+  /**
+   * Make sure the model is updated within a frame.
+   */
+  private void schedule() {
+    if (!mFrameTimer.isRunning()) {
+      mFrameTimer.start();
+    }
+  }
+
+  /**
+   * Push the current region to the model if it has changed.
+   */
+  private void flush() {
+    if (mRegion == null || mRegion.equals(mModel.get())) {
+      return;
+    }
+
+    mUpdating = true;
+
+    try {
+      mModel.set(mRegion);
+    } finally {
+      mUpdating = false;
+    }
+  }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jebtk.bioinformatics.genomic.ChromosomeService;
+import org.jebtk.bioinformatics.genomic.GenesService;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.GenomicRegionModel;
+import org.jebtk.bioinformatics.ui.external.ucsc.CytobandsGeometry;
+import org.jebtk.bioinformatics.ui.external.ucsc.TrackStoreService;
+import org.jebtk.core.event.ChangeEvent;
+import org.jebtk.core.event.ChangeListener;
+
+/**
+ * Watches a region model and, each time it changes, guesses where the user
+ * will go next from how the region just moved: continuing a pan in the same
+ * direction, repeating a zoom, or stepping either way after a jump. The
+ * track stores, gene database and cytoband geometry are then warmed for the
+ * predicted regions on a background thread so that the next step finds its
+ * data ready. A new change abandons the previous prefetch. Call
+ * {@link #dispose()} once the prefetcher is no longer needed.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class RegionPrefetcher {
+
+  /**
+   * Pan step as a fraction of the region, matching the ribbon buttons.
+   */
+  private static final double SHIFT = 0.05;
+
+  /**
+   * The member model.
+   */
+  private final GenomicRegionModel mModel;
+
+  /**
+   * The member genome model.
+   */
+  private final GenomeModel mGenomeModel;
+
+  /**
+   * The previous region.
+   */
+  private GenomicRegion mPrevious;
+
+  /**
+   * The member executor.
+   */
+  private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new PrefetchThreadFactory());
+
+  /**
+   * The prefetch in progress, if any.
+   */
+  private Future<?> mFuture = null;
+
+  /**
+   * The member region events.
+   */
+  private final RegionEvents mRegionEvents = new RegionEvents();
+
+  /**
+   * Creates low priority daemon threads so that prefetching never keeps the
+   * application alive or competes with the ui.
+   */
+  private static class PrefetchThreadFactory implements ThreadFactory {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+     */
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "region-prefetch");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+
+      return thread;
+    }
+  }
+
+  /**
+   * Warms the caches for a set of regions.
+   */
+  private static class PrefetchTask implements Runnable {
+
+    /**
+     * The member genome.
+     */
+    private final Genome mGenome;
+
+    /**
+     * The member regions.
+     */
+    private final List<GenomicRegion> mRegions;
+
+    /**
+     * Instantiates a new prefetch task.
+     *
+     * @param genome  the genome
+     * @param regions the regions
+     */
+    public PrefetchTask(Genome genome, List<GenomicRegion> regions) {
+      mGenome = genome;
+      mRegions = regions;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+      // Make sure the gene database is loaded. A failure here is not
+      // fatal since the lookup will be retried when it is needed.
+      try {
+        GenesService.getInstance().getGenes(mGenome);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+
+      for (GenomicRegion region : mRegions) {
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+
+        CytobandsGeometry.getInstance(mGenome).getBands(region.getChr());
+
+        TrackStoreService.getInstance().warm(region);
+      }
+    }
+  }
+
+  /**
+   * Prefetch when the region changes.
+   */
+  private class RegionEvents implements ChangeListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.abh.lib.event.ChangeListener#changed(org.abh.lib.event.ChangeEvent)
+     */
+    @Override
+    public void changed(ChangeEvent e) {
+      prefetch();
+    }
+  }
+
+  /**
+   * Instantiates a new region prefetcher.
+   *
+   * @param model       the model
+   * @param genomeModel the genome model
+   */
+  public RegionPrefetcher(GenomicRegionModel model, GenomeModel genomeModel) {
+    mModel = model;
+    mGenomeModel = genomeModel;
+    mPrevious = model.get();
+
+    mModel.addChangeListener(mRegionEvents);
+  }
+
+  /**
+   * Stop watching the region model and abandon any prefetch in progress.
+   */
+  public void dispose() {
+    mModel.removeChangeListener(mRegionEvents);
+
+    if (mFuture != null) {
+      mFuture.cancel(true);
+      mFuture = null;
+    }
+
+    mExecutor.shutdownNow();
+  }
+
+  /**
+   * Predict the next regions and warm the caches for them.
+   */
+  private void prefetch() {
+    Genome genome = mGenomeModel.get();
+    GenomicRegion region = mModel.get();
+
+    if (region == null) {
+      return;
+    }
+
+    List<GenomicRegion> regions = predict(genome, mPrevious, region);
+
+    mPrevious = region;
+
+    if (mFuture != null) {
+      mFuture.cancel(true);
+    }
+
+    mFuture = mExecutor.submit(new PrefetchTask(genome, regions));
+  }
+
+  /**
+   * Predict the regions the user is likely to visit next, most likely first.
+   *
+   * @param genome   the genome
+   * @param previous the previous region
+   * @param region   the current region
+   * @return the list
+   */
+  private static List<GenomicRegion> predict(Genome genome, GenomicRegion previous, GenomicRegion region) {
+    List<GenomicRegion> ret = new ArrayList<GenomicRegion>();
+
+    int step = Math.max(1, (int) (region.getLength() * SHIFT));
+
+    if (previous != null && previous.getChr().equals(region.getChr())) {
+      if (previous.getLength() == region.getLength()) {
+        // Panning, so keep going the same way
+        int shift = region.getStart() - previous.getStart();
+
+        if (shift != 0) {
+          ret.add(GenomicRegion.shift(genome, region, shift));
+          ret.add(GenomicRegion.shift(genome, region, 2 * shift));
+        }
+      } else {
+        // Zooming, so repeat the zoom
+        double scale = (double) region.getLength() / previous.getLength();
+
+        ret.add(zoom(genome, region, scale));
+      }
+    }
+
+    // Either way a step in each direction is likely
+    ret.add(GenomicRegion.shift(genome, region, step));
+    ret.add(GenomicRegion.shift(genome, region, -step));
+
+    return ret;
+  }
+
+  /**
+   * Scale a region about its mid point.
+   *
+   * @param genome the genome
+   * @param region the region
+   * @param scale  the scale
+   * @return the genomic region
+   */
+  private static GenomicRegion zoom(Genome genome, GenomicRegion region, double scale) {
+    int size = ChromosomeService.getInstance().size(genome, region.mChr);
+
+    int midPoint = (region.getStart() + region.getEnd()) / 2;
+
+    int d2 = Math.max((int) (region.getLength() * scale) / 2, 1);
+
+    int start = Math.max(Math.min(midPoint - d2, size), 1);
+    int end = Math.max(Math.min(midPoint + d2, size), 1);
+
+    return new GenomicRegion(region.mChr, start, end);
+  }
+}
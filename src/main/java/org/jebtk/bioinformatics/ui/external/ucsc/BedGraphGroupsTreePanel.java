@@ -28,13 +28,18 @@
 package org.jebtk.bioinformatics.ui.external.ucsc;
 
 import java.awt.BorderLayout;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.Box;
 
-import org.jebtk.bioinformatics.ext.ucsc.BedGraph;
 import org.jebtk.bioinformatics.ext.ucsc.BedGraphGroupModel;
 import org.jebtk.bioinformatics.ext.ucsc.BedGraphGroupsModel;
 import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
@@ -57,6 +62,7 @@ import org.jebtk.modern.graphics.icons.OpenFolderVectorIcon;
 import org.jebtk.modern.panel.HBox;
 import org.jebtk.modern.scrollpane.ModernScrollPane;
 import org.jebtk.modern.scrollpane.ScrollBarPolicy;
+import org.jebtk.modern.text.ModernAutoSizeLabel;
 import org.jebtk.modern.tree.ModernTree;
 import org.jebtk.modern.tree.TreeEventListener;
 import org.jebtk.modern.window.ModernWindow;
@@ -98,6 +104,27 @@ public class BedGraphGroupsTreePanel extends ModernWidget implements ChangeListe
    */
   private ModernButton newGroupButton = new ModernOutlineButton("New Group");
 
+  /**
+   * The cancel button. Only enabled whilst files are being imported.
+   */
+  private ModernButton mCancelButton = new ModernOutlineButton("Cancel");
+
+  /**
+   * Shows the progress of any running imports.
+   */
+  private ModernAutoSizeLabel mStatusLabel = new ModernAutoSizeLabel("");
+
+  /**
+   * Imports that have not yet finished.
+   */
+  private List<ImportTask> mTasks = new ArrayList<ImportTask>();
+
+  /**
+   * Set whilst tracks are being added to the model from an import so that the
+   * tree is updated incrementally rather than rebuilt on each change.
+   */
+  private boolean mImporting = false;
+
   // protected List<BedGraph> mBedGraphs = new ArrayList<BedGraph>();
 
   /**
@@ -188,6 +215,104 @@ public class BedGraphGroupsTreePanel extends ModernWidget implements ChangeListe
     }
   }
 
+  /**
+   * The class CancelEvents.
+   */
+  private class CancelEvents implements ModernClickListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jebtk.ui.ui.event.ModernClickListener#clicked(org.jebtk.ui.ui.event.
+     * ModernClickEvent)
+     */
+    @Override
+    public void clicked(ModernClickEvent e) {
+      cancelImports();
+    }
+  }
+
+  /**
+   * The class ProgressEvents.
+   */
+  private class ProgressEvents implements PropertyChangeListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.beans.PropertyChangeListener#propertyChange(java.beans.
+     * PropertyChangeEvent)
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent e) {
+      if ("progress".equals(e.getPropertyName())) {
+        updateStatus();
+      }
+    }
+  }
+
+  /**
+   * Adds tracks to the model, on the event thread, as each file finishes
+   * parsing.
+   */
+  private class ImportTask extends BedGraphImportTask {
+
+    /**
+     * The member group.
+     */
+    private final String mGroup;
+
+    /**
+     * Instantiates a new import task.
+     *
+     * @param files the files
+     * @param group the group to add tracks to or null to use the default group.
+     */
+    public ImportTask(List<Path> files, String group) {
+      super(files);
+
+      mGroup = group;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#process(java.util.List)
+     */
+    @Override
+    protected void process(List<UCSCTrack> tracks) {
+      if (isCancelled()) {
+        return;
+      }
+
+      for (UCSCTrack track : tracks) {
+        addTrack(mGroup, track);
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#done()
+     */
+    @Override
+    protected void done() {
+      try {
+        get();
+      } catch (CancellationException e) {
+        // user cancelled so keep whatever was already loaded
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } catch (ExecutionException e) {
+        e.printStackTrace();
+      }
+
+      mTasks.remove(this);
+
+      updateStatus();
+    }
+  }
+
   /**
    * Instantiates a new bed graph groups tree panel.
    *
@@ -244,6 +369,16 @@ public class BedGraphGroupsTreePanel extends ModernWidget implements ChangeListe
     clearButton.setToolTip("Clear Groups", "Remove all groups.");
     box.add(clearButton);
 
+    box.add(createHGap());
+
+    mCancelButton.setToolTip("Cancel", "Stop loading files.");
+    mCancelButton.setEnabled(false);
+    box.add(mCancelButton);
+
+    box.add(createHGap());
+
+    box.add(mStatusLabel);
+
     box.setBorder(TOP_BOTTOM_BORDER);
 
     add(box, BorderLayout.PAGE_START);
@@ -252,6 +387,7 @@ public class BedGraphGroupsTreePanel extends ModernWidget implements ChangeListe
     removeButton.addClickListener(new RemoveEvents());
     clearButton.addClickListener(new ClearEvents());
     newGroupButton.addClickListener(new NewGroupEvents());
+    mCancelButton.addClickListener(new CancelEvents());
 
     // tree.addTreeListener(new TreeEvents());
   }
@@ -287,15 +423,7 @@ public class BedGraphGroupsTreePanel extends ModernWidget implements ChangeListe
 
     String group = importDialog.getGroup();
 
-    for (Path file : files) {
-      List<BedGraph> bedGraphs = BedGraph.parse(file);
-
-      for (UCSCTrack graph : bedGraphs) {
-        mModel.add(group, graph);
-      }
-    }
-
-    createTree();
+    importFiles(files, group);
   }
 
   /**
@@ -305,30 +433,105 @@ public class BedGraphGroupsTreePanel extends ModernWidget implements ChangeListe
    * @throws IOException Signals that an I/O exception has occurred.
    */
   public void load(Path file) throws IOException {
-    List<BedGraph> bedGraphs = BedGraph.parse(file);
+    String group = null;
 
-    for (UCSCTrack graph : bedGraphs) {
+    // find the closest
+    for (TreeNode<UCSCTrack> node : mTree.getFlattenedTree()) {
+      if (node.getValue() == null) {
+        group = node.getName();
+      }
 
-      String group = null;
+      if (node.equals(mTree.getSelectedNode())) {
+        break;
+      }
+    }
 
-      // find the closest
-      for (TreeNode<UCSCTrack> node : mTree.getFlattenedTree()) {
-        if (node.getValue() == null) {
-          group = node.getName();
-        }
+    importFiles(Collections.singletonList(file), group);
+  }
 
-        if (node.equals(mTree.getSelectedNode())) {
-          break;
-        }
-      }
+  /**
+   * Parse files in the background, adding each track to the model as soon as
+   * it is available.
+   *
+   * @param files the files
+   * @param group the group or null to use the model default.
+   */
+  private void importFiles(List<Path> files, String group) {
+    ImportTask task = new ImportTask(files, group);
 
+    task.addPropertyChangeListener(new ProgressEvents());
+
+    mTasks.add(task);
+
+    updateStatus();
+
+    task.execute();
+  }
+
+  /**
+   * Cancel any running imports. Tracks that have already been loaded are kept.
+   */
+  public void cancelImports() {
+    for (ImportTask task : new ArrayList<ImportTask>(mTasks)) {
+      task.cancel(true);
+    }
+  }
+
+  /**
+   * Update the progress label and cancel button to reflect running imports.
+   */
+  private void updateStatus() {
+    int files = 0;
+    int loaded = 0;
+
+    for (ImportTask task : mTasks) {
+      files += task.getFileCount();
+      loaded += task.getFilesLoaded();
+    }
+
+    if (files > 0) {
+      mStatusLabel.setText("Loading " + loaded + " of " + files + " files...");
+    } else {
+      mStatusLabel.setText("");
+    }
+
+    mCancelButton.setEnabled(files > 0);
+  }
+
+  /**
+   * Adds a newly loaded track to the model and to the tree without rebuilding
+   * the tree.
+   *
+   * @param group the group
+   * @param track the track
+   */
+  private void addTrack(String group, UCSCTrack track) {
+    mImporting = true;
+
+    try {
       if (group == null) {
-        mModel.add(graph);
+        mModel.add(track);
       } else {
-        mModel.add(group, graph);
+        mModel.add(group, track);
       }
+    } finally {
+      mImporting = false;
     }
 
+    TreeNode<UCSCTrack> root = mTree.getRoot();
+
+    if (root != null && group != null) {
+      for (TreeNode<UCSCTrack> groupNode : root) {
+        if (groupNode.getValue() == null && groupNode.getName().equals(group)) {
+          groupNode.addChild(new TreeNode<UCSCTrack>(track.getName(), track));
+
+          return;
+        }
+      }
+    }
+
+    // The group is new (or is the model default) so fall back to a
+    // full rebuild
     createTree();
   }
 
@@ -361,6 +564,12 @@ public class BedGraphGroupsTreePanel extends ModernWidget implements ChangeListe
     }
 
     UCSCTrack.write(bedGraph, file);
+
+    // Tracks loaded from the track cache have no elements so their
+    // intervals are written from their store after the track line
+    if (bedGraph.getElements().isEmpty()) {
+      TrackStoreService.getInstance().getStore(bedGraph).append(file);
+    }
   }
 
   /**
@@ -448,6 +657,10 @@ public class BedGraphGroupsTreePanel extends ModernWidget implements ChangeListe
    */
   @Override
   public void changed(ChangeEvent e) {
+    if (mImporting) {
+      return;
+    }
+
     createTree();
   }
 
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+
+import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
+
+/**
+ * Parses a set of BedGraph files using the {@link BedGraphIngestService} so
+ * that the event thread is never blocked by large files. Each track is
+ * published as soon as its file has been parsed so that subclasses can add it
+ * to a model incrementally in {@link #process(List)}. Progress is reported
+ * through the standard {@code progress} property (0 - 100).
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class BedGraphImportTask extends SwingWorker<List<UCSCTrack>, UCSCTrack> {
+
+  /**
+   * The member files.
+   */
+  private final List<Path> mFiles;
+
+  /**
+   * The member files loaded.
+   */
+  private volatile int mFilesLoaded = 0;
+
+  /**
+   * Instantiates a new bed graph import task.
+   *
+   * @param files the files to parse.
+   */
+  public BedGraphImportTask(List<Path> files) {
+    mFiles = new ArrayList<Path>(files);
+  }
+
+  /**
+   * Gets the file count.
+   *
+   * @return the file count
+   */
+  public int getFileCount() {
+    return mFiles.size();
+  }
+
+  /**
+   * Gets the number of files that have been parsed so far.
+   *
+   * @return the files loaded
+   */
+  public int getFilesLoaded() {
+    return mFilesLoaded;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see javax.swing.SwingWorker#doInBackground()
+   */
+  @Override
+  protected List<UCSCTrack> doInBackground() throws Exception {
+    List<UCSCTrack> ret = new ArrayList<UCSCTrack>();
+
+    BedGraphIngestService.Batch batch = BedGraphIngestService.getInstance().ingest(mFiles);
+
+    try {
+      while (batch.hasNext() && !isCancelled()) {
+        try {
+          BedGraphIngestService.Result result = batch.next();
+
+          try {
+            for (UCSCTrack track : result.getTracks()) {
+              ret.add(track);
+
+              publish(track);
+            }
+          } finally {
+            result.release();
+          }
+        } catch (ExecutionException e) {
+          // A bad file should not abort the remaining files
+          e.printStackTrace();
+        }
+
+        mFilesLoaded = mFilesLoaded + 1;
+
+        setProgress(100 * mFilesLoaded / mFiles.size());
+      }
+    } finally {
+      // Stop any parses that have not finished if the import was cancelled
+      batch.cancel();
+    }
+
+    return ret;
+  }
+}
@@ -0,0 +1,493 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.jebtk.bioinformatics.ext.ucsc.BedGraph;
+
+/**
+ * Parses BedGraph files in parallel across all available cores. The amount of
+ * heap that parsing is allowed to consume is bounded by a budget: each file
+ * reserves an estimate of the memory it will need before it is parsed and
+ * gives it back once the consumer has taken the parsed tracks. Workers block
+ * when the budget is exhausted so that a slow consumer applies back-pressure
+ * rather than letting parsed but unused tracks pile up. Tracks the consumer
+ * has taken no longer count against the budget, so it bounds the parses in
+ * flight, not the memory of the tracks the application keeps. Each file is
+ * parsed whole by one worker.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class BedGraphIngestService {
+
+  /**
+   * The Class BedGraphIngestServiceLoader.
+   */
+  private static class BedGraphIngestServiceLoader {
+
+    /** The Constant INSTANCE. */
+    private static final BedGraphIngestService INSTANCE = new BedGraphIngestService();
+  }
+
+  /**
+   * Gets the single instance of BedGraphIngestService.
+   *
+   * @return single instance of BedGraphIngestService
+   */
+  public static BedGraphIngestService getInstance() {
+    return BedGraphIngestServiceLoader.INSTANCE;
+  }
+
+  /**
+   * Approximate number of bytes of heap needed to hold a parsed track per byte
+   * of the text file it came from.
+   */
+  public static final int HEAP_FACTOR = 4;
+
+  /**
+   * The member pool.
+   */
+  private final ExecutorService mPool;
+
+  /**
+   * The member budget in bytes.
+   */
+  private long mBudget;
+
+  /**
+   * The member used in bytes.
+   */
+  private long mUsed = 0;
+
+  /**
+   * Creates daemon worker threads so that parsing never keeps the application
+   * alive.
+   */
+  private static class IngestThreadFactory implements ThreadFactory {
+
+    /**
+     * The member count.
+     */
+    private int mCount = 0;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+     */
+    @Override
+    public synchronized Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "bedgraph-ingest-" + (++mCount));
+      thread.setDaemon(true);
+
+      return thread;
+    }
+  }
+
+  /**
+   * Orders files largest first so that a big file starts early and does not
+   * end up as the last task running on an otherwise idle machine.
+   */
+  private static class SizeComparator implements Comparator<Path> {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public int compare(Path f1, Path f2) {
+      return Long.compare(size(f2), size(f1));
+    }
+  }
+
+  /**
+   * The tracks parsed from one file. The heap reserved for the file is held
+   * until {@link #release()} is called.
+   */
+  public static class Result {
+
+    /**
+     * The member batch.
+     */
+    private final Batch mBatch;
+
+    /**
+     * The member file.
+     */
+    private final Path mFile;
+
+    /**
+     * The member tracks.
+     */
+    private final List<BedGraph> mTracks;
+
+    /**
+     * The member bytes.
+     */
+    private final long mBytes;
+
+    /**
+     * Instantiates a new result.
+     *
+     * @param batch  the batch
+     * @param file   the file
+     * @param tracks the tracks
+     * @param bytes  the bytes reserved.
+     */
+    private Result(Batch batch, Path file, List<BedGraph> tracks, long bytes) {
+      mBatch = batch;
+      mFile = file;
+      mTracks = tracks;
+      mBytes = bytes;
+    }
+
+    /**
+     * Gets the file.
+     *
+     * @return the file
+     */
+    public Path getFile() {
+      return mFile;
+    }
+
+    /**
+     * Gets the tracks.
+     *
+     * @return the tracks
+     */
+    public List<BedGraph> getTracks() {
+      return mTracks;
+    }
+
+    /**
+     * Return the heap reserved for this file to the budget. Calling this more
+     * than once has no effect.
+     */
+    public void release() {
+      mBatch.release(this);
+    }
+  }
+
+  /**
+   * A set of files being parsed. Results are returned in the order the files
+   * finish, not the order they were submitted.
+   */
+  public class Batch {
+
+    /**
+     * The member service.
+     */
+    private final CompletionService<Result> mService;
+
+    /**
+     * The member futures.
+     */
+    private final List<Future<Result>> mFutures = new ArrayList<Future<Result>>();
+
+    /**
+     * Results that have been parsed but not released.
+     */
+    private final Set<Result> mHeld = new HashSet<Result>();
+
+    /**
+     * The member remaining.
+     */
+    private int mRemaining;
+
+    /**
+     * The member cancelled.
+     */
+    private boolean mCancelled = false;
+
+    /**
+     * Parses a single file once enough of the budget is free.
+     */
+    private class ParseTask implements Callable<Result> {
+
+      /**
+       * The member file.
+       */
+      private final Path mFile;
+
+      /**
+       * Instantiates a new parse task.
+       *
+       * @param file the file
+       */
+      public ParseTask(Path file) {
+        mFile = file;
+      }
+
+      /*
+       * (non-Javadoc)
+       * 
+       * @see java.util.concurrent.Callable#call()
+       */
+      @Override
+      public Result call() throws Exception {
+        long bytes = estimateHeap(mFile);
+
+        acquire(bytes);
+
+        boolean held = false;
+
+        try {
+          // The cache maps previously seen files and otherwise parses the
+          // file and builds its stores here, off the event thread
+          List<BedGraph> tracks = TrackStoreCache.getInstance().bedGraphs(mFile);
+
+          // Index and summarize now so that the first region query does
+          // not have to
+          for (BedGraph track : tracks) {
+            TrackStore store = TrackStoreService.getInstance().getStore(track);
+
+            store.getIndex();
+            store.getPyramid();
+          }
+
+          Result result = new Result(Batch.this, mFile, tracks, bytes);
+
+          held = hold(result);
+
+          return result;
+        } finally {
+          if (!held) {
+            BedGraphIngestService.this.release(bytes);
+          }
+        }
+      }
+    }
+
+    /**
+     * Instantiates a new batch.
+     *
+     * @param files the files
+     */
+    private Batch(List<Path> files) {
+      mService = new ExecutorCompletionService<Result>(mPool);
+
+      List<Path> sorted = new ArrayList<Path>(files);
+
+      Collections.sort(sorted, new SizeComparator());
+
+      for (Path file : sorted) {
+        mFutures.add(mService.submit(new ParseTask(file)));
+      }
+
+      mRemaining = sorted.size();
+    }
+
+    /**
+     * Returns true if there are files whose results have not been taken.
+     *
+     * @return true, if successful
+     */
+    public boolean hasNext() {
+      return mRemaining > 0;
+    }
+
+    /**
+     * Wait for the next file to finish parsing.
+     *
+     * @return the result
+     * @throws InterruptedException the interrupted exception
+     * @throws ExecutionException   if the file could not be parsed.
+     */
+    public Result next() throws InterruptedException, ExecutionException {
+      Future<Result> future = mService.take();
+
+      --mRemaining;
+
+      return future.get();
+    }
+
+    /**
+     * Stop parsing any remaining files and release everything this batch is
+     * holding.
+     */
+    public void cancel() {
+      synchronized (this) {
+        mCancelled = true;
+
+        for (Result result : mHeld) {
+          BedGraphIngestService.this.release(result.mBytes);
+        }
+
+        mHeld.clear();
+      }
+
+      for (Future<Result> future : mFutures) {
+        future.cancel(true);
+      }
+    }
+
+    /**
+     * Record that a result is holding part of the budget.
+     *
+     * @param result the result
+     * @return false if the batch has been cancelled and so the result should
+     *         not hold anything.
+     */
+    private synchronized boolean hold(Result result) {
+      if (mCancelled) {
+        return false;
+      }
+
+      mHeld.add(result);
+
+      return true;
+    }
+
+    /**
+     * Release.
+     *
+     * @param result the result
+     */
+    private synchronized void release(Result result) {
+      if (mHeld.remove(result)) {
+        BedGraphIngestService.this.release(result.mBytes);
+      }
+    }
+  }
+
+  /**
+   * Instantiates a new bed graph ingest service.
+   */
+  private BedGraphIngestService() {
+    mPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new IngestThreadFactory());
+
+    // By default allow half of the heap to be used for parsing
+    mBudget = Runtime.getRuntime().maxMemory() / 2;
+  }
+
+  /**
+   * Sets the maximum amount of heap, in bytes, that files being parsed, or
+   * parsed but not yet consumed, may occupy.
+   *
+   * @param bytes the new heap budget
+   */
+  public synchronized void setHeapBudget(long bytes) {
+    mBudget = Math.max(1, bytes);
+
+    notifyAll();
+  }
+
+  /**
+   * Gets the heap budget.
+   *
+   * @return the heap budget
+   */
+  public synchronized long getHeapBudget() {
+    return mBudget;
+  }
+
+  /**
+   * Start parsing a set of files.
+   *
+   * @param files the files
+   * @return the batch
+   */
+  public Batch ingest(List<Path> files) {
+    return new Batch(files);
+  }
+
+  /**
+   * Block until there is room in the budget. A file larger than the whole
+   * budget is allowed through once nothing else is running, otherwise it
+   * could never be loaded.
+   *
+   * @param bytes the bytes
+   * @throws InterruptedException the interrupted exception
+   */
+  private synchronized void acquire(long bytes) throws InterruptedException {
+    while (mUsed > 0 && mUsed + bytes > mBudget) {
+      wait();
+    }
+
+    mUsed += bytes;
+  }
+
+  /**
+   * Release.
+   *
+   * @param bytes the bytes
+   */
+  private synchronized void release(long bytes) {
+    mUsed -= bytes;
+
+    notifyAll();
+  }
+
+  /**
+   * Estimate how much heap parsing a file will need. Files in the track cache
+   * are memory mapped rather than parsed so need almost none.
+   *
+   * @param file the file
+   * @return the estimate in bytes
+   */
+  public static long estimateHeap(Path file) {
+    if (TrackStoreCache.getInstance().isCached(file)) {
+      return 0;
+    }
+
+    return size(file) * HEAP_FACTOR;
+  }
+
+  /**
+   * Size.
+   *
+   * @param file the file
+   * @return the size of the file or 0 if it cannot be determined.
+   */
+  private static long size(Path file) {
+    try {
+      return Files.size(file);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+}
@@ -27,15 +27,23 @@
  */
 package org.jebtk.bioinformatics.ui.external.ucsc;
 
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
-import org.jebtk.bioinformatics.ext.ucsc.BedGraphElement;
 import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
-import org.jebtk.bioinformatics.genomic.GenomicElement;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
 import org.jebtk.modern.table.ModernTableModel;
 
 /**
- * Provides a view onto an excel workbook.
+ * Virtual table view onto a bedgraph track store. Rows are read straight from
+ * the store columns and only rows that are painted are boxed. The most
+ * recently boxed rows are cached so that repainting the viewport does not
+ * box them again. Rows are shown in file order until sorted. Sorting and
+ * filtering work on a permutation of row indices so the store itself is
+ * never copied.
  * 
  * @author Antony Holmes
  *
@@ -48,9 +56,30 @@ public class BedGraphTableModel extends ModernTableModel {
   private static final String[] HEADER = { "Chr", "Start", "End", "Value" };
 
   /**
-   * The member features.
+   * The number of boxed rows to cache. This should comfortably exceed
+   * the number of rows visible at once.
    */
-  private List<GenomicElement> mFeatures;
+  private static final int CACHE_SIZE = 512;
+
+  /**
+   * The member store.
+   */
+  private TrackStore mStore;
+
+  /**
+   * Maps view rows to store rows, or null if the view is the file order.
+   */
+  private int[] mRows = null;
+
+  /**
+   * The view row held in each cache slot.
+   */
+  private final int[] mCacheRows = new int[CACHE_SIZE];
+
+  /**
+   * The cells of each cache slot.
+   */
+  private final Object[][] mCache = new Object[CACHE_SIZE][HEADER.length];
 
   /**
    * Instantiates a new bed graph table model.
@@ -58,7 +87,18 @@ public class BedGraphTableModel extends ModernTableModel {
    * @param bed the bed
    */
   public BedGraphTableModel(UCSCTrack bed) {
-    mFeatures = bed.getElements();
+    this(TrackStoreService.getInstance().getStore(bed));
+  }
+
+  /**
+   * Instantiates a new bed graph table model.
+   *
+   * @param store the store
+   */
+  public BedGraphTableModel(TrackStore store) {
+    mStore = store;
+
+    clearCache();
   }
 
   /*
@@ -88,7 +128,7 @@ public class BedGraphTableModel extends ModernTableModel {
    */
   @Override
   public final int getRowCount() {
-    return mFeatures.size();
+    return mRows != null ? mRows.length : mStore.size();
   }
 
   /*
@@ -98,15 +138,225 @@ public class BedGraphTableModel extends ModernTableModel {
    */
   @Override
   public Object getValueAt(int row, int column) {
+    int slot = row % CACHE_SIZE;
+
+    if (mCacheRows[slot] != row) {
+      int r = getStoreRow(row);
+
+      Object[] cells = mCache[slot];
+
+      cells[0] = mStore.getChr(r);
+      cells[1] = mStore.getStart(r);
+      cells[2] = mStore.getEnd(r);
+      cells[3] = mStore.hasValues() ? mStore.getValue(r) : null;
+
+      mCacheRows[slot] = row;
+    }
+
+    return mCache[slot][column];
+  }
+
+  /**
+   * Gets the store row shown at a view row.
+   *
+   * @param row the row
+   * @return the store row
+   */
+  public int getStoreRow(int row) {
+    return mRows != null ? mRows[row] : mStore.getFileRow(row);
+  }
+
+  /**
+   * Gets the store.
+   *
+   * @return the store
+   */
+  public TrackStore getStore() {
+    return mStore;
+  }
+
+  /**
+   * Sort the current view by a column. Chromosomes are sorted by name. The
+   * sort is stable in both directions so sorting by one column and then
+   * another gives a multi-column sort.
+   *
+   * @param column    the column
+   * @param ascending the ascending
+   */
+  public void sort(int column, boolean ascending) {
+    int[] keys;
+
     switch (column) {
     case 0:
-      return mFeatures.get(row).getChr().toString();
+      keys = chrRanks();
+      break;
     case 1:
-      return mFeatures.get(row).getStart();
+      keys = column(mStore.getStarts());
+      break;
     case 2:
-      return mFeatures.get(row).getEnd();
+      keys = column(mStore.getEnds());
+      break;
     default:
-      return ((BedGraphElement) mFeatures.get(row)).getValue();
+      if (!mStore.hasValues()) {
+        // Every row has the same (missing) value
+        return;
+      }
+
+      keys = values(mStore.getValues());
+      break;
+    }
+
+    if (!ascending) {
+      // Invert the keys rather than reversing the order so that rows with
+      // equal keys keep their order
+      for (int i = 0; i < keys.length; ++i) {
+        keys[i] = ~keys[i];
+      }
+    }
+
+    int[] order = mRows != null ? mRows : mStore.getFileOrder();
+
+    setRows(TrackSort.sort(keys, order));
+  }
+
+  /**
+   * Show only rows overlapping a region, keeping the current order.
+   *
+   * @param region the region
+   */
+  public void filter(GenomicRegion region) {
+    BitSet keep = new BitSet(mStore.size());
+
+    for (int r : mStore.getIndex().overlap(region)) {
+      keep.set(r);
+    }
+
+    filter(keep);
+  }
+
+  /**
+   * Show only rows whose value lies in a range, keeping the current order.
+   *
+   * @param min the min
+   * @param max the max
+   */
+  public void filter(float min, float max) {
+    BitSet keep = new BitSet(mStore.size());
+
+    // A track without values has no rows in any range
+    for (int r = 0; mStore.hasValues() && r < mStore.size(); ++r) {
+      float v = mStore.getValue(r);
+
+      if (v >= min && v <= max) {
+        keep.set(r);
+      }
+    }
+
+    filter(keep);
+  }
+
+  /**
+   * Keep the rows of the current view that are set.
+   *
+   * @param keep the keep
+   */
+  private void filter(BitSet keep) {
+    int n = getRowCount();
+
+    int[] rows = new int[Math.min(n, keep.cardinality())];
+    int c = 0;
+
+    for (int i = 0; i < n; ++i) {
+      int r = getStoreRow(i);
+
+      if (keep.get(r)) {
+        rows[c++] = r;
+      }
+    }
+
+    setRows(c < rows.length ? Arrays.copyOf(rows, c) : rows);
+  }
+
+  /**
+   * Show all rows in file order.
+   */
+  public void reset() {
+    setRows(null);
+  }
+
+  /**
+   * Sets the rows.
+   *
+   * @param rows the new rows
+   */
+  private void setRows(int[] rows) {
+    mRows = rows;
+
+    clearCache();
+
+    fireDataChanged();
+  }
+
+  /**
+   * Clear cache.
+   */
+  private void clearCache() {
+    Arrays.fill(mCacheRows, -1);
+  }
+
+  /**
+   * Rank of each row's chromosome when chromosomes are sorted by name.
+   *
+   * @return the ranks indexed by row.
+   */
+  private int[] chrRanks() {
+    List<String> chrs = mStore.getChrs();
+
+    String[] sorted = chrs.toArray(new String[chrs.size()]);
+    Arrays.sort(sorted);
+
+    int[] rank = new int[sorted.length];
+
+    for (int i = 0; i < sorted.length; ++i) {
+      rank[mStore.getChrId(sorted[i])] = i;
     }
+
+    int[] ret = new int[mStore.size()];
+
+    for (int r = 0; r < ret.length; ++r) {
+      ret[r] = rank[mStore.getChrId(r)];
+    }
+
+    return ret;
+  }
+
+  /**
+   * Copy a float column into an array of keys that sort in the same order.
+   *
+   * @param buffer the buffer
+   * @return the int[]
+   */
+  private static int[] values(FloatBuffer buffer) {
+    int[] ret = new int[buffer.remaining()];
+
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = TrackSort.sortable(buffer.get(i));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Copy an int column into an array.
+   *
+   * @param buffer the buffer
+   * @return the int[]
+   */
+  private static int[] column(IntBuffer buffer) {
+    int[] ret = new int[buffer.remaining()];
+
+    buffer.get(ret);
+
+    return ret;
   }
 }
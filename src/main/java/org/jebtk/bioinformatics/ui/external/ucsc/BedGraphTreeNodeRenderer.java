@@ -92,7 +92,7 @@ public class BedGraphTreeNodeRenderer extends ModernTreeNodeRenderer {
 
       g2.setFont(BOLD_FONT);
     } else {
-      buffer.append(" (").append(Integer.toString(mBedGraph.getElements().size())).append(")");
+      buffer.append(" (").append(Integer.toString(TrackStoreService.getInstance().size(mBedGraph))).append(")");
 
       g2.setFont(FONT);
     }
@@ -28,11 +28,16 @@
 package org.jebtk.bioinformatics.ui.external.ucsc;
 
 import java.awt.BorderLayout;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import org.jebtk.bioinformatics.ext.ucsc.BedGraph;
 import org.jebtk.bioinformatics.ext.ucsc.BedGraphGroupModel;
@@ -45,6 +50,7 @@ import org.jebtk.core.tree.TreeNode;
 import org.jebtk.core.tree.TreeRootNode;
 import org.jebtk.modern.AssetService;
 import org.jebtk.modern.button.ModernButton;
+import org.jebtk.modern.button.ModernOutlineButton;
 import org.jebtk.modern.contentpane.HTabToolbar;
 import org.jebtk.modern.dialog.ModernDialogStatus;
 import org.jebtk.modern.dialog.ModernMessageDialog;
@@ -55,6 +61,7 @@ import org.jebtk.modern.panel.ModernPanel;
 import org.jebtk.modern.ribbon.ToolbarButton;
 import org.jebtk.modern.scrollpane.ModernScrollPane;
 import org.jebtk.modern.scrollpane.ScrollBarPolicy;
+import org.jebtk.modern.text.ModernAutoSizeLabel;
 import org.jebtk.modern.tree.ModernTree;
 import org.jebtk.modern.tree.TreeEventListener;
 import org.jebtk.modern.window.ModernWindow;
@@ -90,6 +97,21 @@ public class BedGraphTreePanel extends ModernPanel implements ChangeListener {
    */
   private ModernButton mRemoveButton = new ToolbarButton(AssetService.getInstance().loadIcon("trash_bw", 16));
 
+  /**
+   * The cancel button. Only enabled whilst files are being imported.
+   */
+  private ModernButton mCancelButton = new ModernOutlineButton("Cancel");
+
+  /**
+   * Shows the progress of any running imports.
+   */
+  private ModernAutoSizeLabel mStatusLabel = new ModernAutoSizeLabel("");
+
+  /**
+   * Imports that have not yet finished.
+   */
+  private List<ImportTask> mTasks = new ArrayList<ImportTask>();
+
   // private ModernButton mClearButton =
   // new ModernButton(UIResources.getInstance().loadIcon("clear", 16));
   // //Ui.MENU_CLEAR);
@@ -117,6 +139,108 @@ public class BedGraphTreePanel extends ModernPanel implements ChangeListener {
     }
   }
 
+  /**
+   * The class CancelEvents.
+   */
+  private class CancelEvents implements ModernClickListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.jebtk.ui.ui.event.ModernClickListener#clicked(org.jebtk.ui.ui.event.
+     * ModernClickEvent)
+     */
+    @Override
+    public void clicked(ModernClickEvent e) {
+      cancelImports();
+    }
+  }
+
+  /**
+   * The class ProgressEvents.
+   */
+  private class ProgressEvents implements PropertyChangeListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.beans.PropertyChangeListener#propertyChange(java.beans.
+     * PropertyChangeEvent)
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent e) {
+      if ("progress".equals(e.getPropertyName())) {
+        updateStatus();
+      }
+    }
+  }
+
+  /**
+   * Adds tracks to the model, on the event thread, as each file finishes
+   * parsing.
+   */
+  private class ImportTask extends BedGraphImportTask {
+
+    /**
+     * The member group.
+     */
+    private final String mGroup;
+
+    /**
+     * Instantiates a new import task.
+     *
+     * @param files the files
+     * @param group the group to add tracks to or null to use the default group.
+     */
+    public ImportTask(List<Path> files, String group) {
+      super(files);
+
+      mGroup = group;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#process(java.util.List)
+     */
+    @Override
+    protected void process(List<UCSCTrack> tracks) {
+      if (isCancelled()) {
+        return;
+      }
+
+      for (UCSCTrack track : tracks) {
+        if (mGroup == null) {
+          mModel.add(track);
+        } else {
+          mModel.add(mGroup, track);
+        }
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#done()
+     */
+    @Override
+    protected void done() {
+      try {
+        get();
+      } catch (CancellationException e) {
+        // user cancelled so keep whatever was already loaded
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } catch (ExecutionException e) {
+        e.printStackTrace();
+      }
+
+      mTasks.remove(this);
+
+      updateStatus();
+    }
+  }
+
   /**
    * Instantiates a new bed graph tree panel.
    *
@@ -160,6 +284,14 @@ public class BedGraphTreePanel extends ModernPanel implements ChangeListener {
     // box.add(Box.createHorizontalGlue());
     box.add(ModernPanel.createHGap());
 
+    mCancelButton.setToolTip("Cancel", "Stop loading files.");
+    mCancelButton.setEnabled(false);
+    box.add(mCancelButton);
+
+    box.add(ModernPanel.createHGap());
+
+    box.add(mStatusLabel);
+
     // mClearButton.setToolTip("Clear BedGraphs", "Remove all BedGraphs.");
     // box.add(mClearButton);
 
@@ -169,6 +301,7 @@ public class BedGraphTreePanel extends ModernPanel implements ChangeListener {
 
     // loadButton.addClickListener(new LoadEvents());
     mRemoveButton.addClickListener(new RemoveEvents());
+    mCancelButton.addClickListener(new CancelEvents());
     // mClearButton.addClickListener(new ClearEvents());
   }
 
@@ -203,15 +336,7 @@ public class BedGraphTreePanel extends ModernPanel implements ChangeListener {
 
     String group = importDialog.getGroup();
 
-    for (Path file : files) {
-      List<BedGraph> bedGraphs = BedGraph.parse(file);
-
-      for (UCSCTrack graph : bedGraphs) {
-        mModel.add(group, graph);
-      }
-    }
-
-    createTree();
+    importFiles(files, group);
   }
 
   /**
@@ -221,30 +346,69 @@ public class BedGraphTreePanel extends ModernPanel implements ChangeListener {
    * @throws IOException Signals that an I/O exception has occurred.
    */
   public void load(Path file) throws IOException {
-    List<BedGraph> bedGraphs = BedGraph.parse(file);
-
-    for (UCSCTrack graph : bedGraphs) {
-      String group = null;
-
-      // find the closest
-      for (TreeNode<UCSCTrack> node : mTree.getFlattenedTree()) {
-        if (node.getValue() == null) {
-          group = node.getName();
-        }
+    String group = null;
 
-        if (node.equals(mTree.getSelectedNode())) {
-          break;
-        }
+    // find the closest
+    for (TreeNode<UCSCTrack> node : mTree.getFlattenedTree()) {
+      if (node.getValue() == null) {
+        group = node.getName();
       }
 
-      if (group == null) {
-        mModel.add(graph);
-      } else {
-        mModel.add(group, graph);
+      if (node.equals(mTree.getSelectedNode())) {
+        break;
       }
     }
 
-    createTree();
+    importFiles(Collections.singletonList(file), group);
+  }
+
+  /**
+   * Parse files in the background, adding each track to the model as soon as
+   * it is available.
+   *
+   * @param files the files
+   * @param group the group or null to use the model default.
+   */
+  private void importFiles(List<Path> files, String group) {
+    ImportTask task = new ImportTask(files, group);
+
+    task.addPropertyChangeListener(new ProgressEvents());
+
+    mTasks.add(task);
+
+    updateStatus();
+
+    task.execute();
+  }
+
+  /**
+   * Cancel any running imports. Tracks that have already been loaded are kept.
+   */
+  public void cancelImports() {
+    for (ImportTask task : new ArrayList<ImportTask>(mTasks)) {
+      task.cancel(true);
+    }
+  }
+
+  /**
+   * Update the progress label and cancel button to reflect running imports.
+   */
+  private void updateStatus() {
+    int files = 0;
+    int loaded = 0;
+
+    for (ImportTask task : mTasks) {
+      files += task.getFileCount();
+      loaded += task.getFilesLoaded();
+    }
+
+    if (files > 0) {
+      mStatusLabel.setText("Loading " + loaded + " of " + files + " files...");
+    } else {
+      mStatusLabel.setText("");
+    }
+
+    mCancelButton.setEnabled(files > 0);
   }
 
   /**
@@ -276,6 +440,12 @@ public class BedGraphTreePanel extends ModernPanel implements ChangeListener {
     }
 
     BedGraph.write(bedGraph, file);
+
+    // Tracks loaded from the track cache have no elements so their
+    // intervals are written from their store after the track line
+    if (bedGraph.getElements().isEmpty()) {
+      TrackStoreService.getInstance().getStore(bedGraph).append(file);
+    }
   }
 
   /**
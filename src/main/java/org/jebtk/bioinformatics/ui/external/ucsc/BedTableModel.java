@@ -27,15 +27,26 @@
  */
 package org.jebtk.bioinformatics.ui.external.ucsc;
 
-import java.util.List;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
-import org.jebtk.bioinformatics.ext.ucsc.BedElement;
 import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
-import org.jebtk.bioinformatics.genomic.GenomicElement;
 import org.jebtk.modern.table.ModernTableModel;
 
 /**
- * Provides a view onto an excel workbook.
+ * Table view onto a bed track store that can be filtered live. Typing a
+ * location such as {@code chr7:} or {@code chr7:100-200} shows the features
+ * on that chromosome or overlapping that range using the interval index.
+ * Anything else is treated as a name fragment and matched using the name
+ * trigram index. Filtering is debounced, runs off the event thread and a new
+ * query cancels the one before it. The result is a view of store rows so the
+ * store itself is never copied.
  * 
  * @author Antony Holmes
  *
@@ -48,14 +59,116 @@ public class BedTableModel extends ModernTableModel {
   private static final String[] HEADER = { "Chr", "Start", "End", "Name" };
 
   /**
-   * The member bed.
+   * How long to wait after the last keystroke before filtering.
+   */
+  private static final int FILTER_DELAY = 150;
+
+  /**
+   * Matches chr7:, chr7:100 or chr7:100-200.
+   */
+  private static final Pattern LOCATION_PATTERN = Pattern
+      .compile("^(chr[^:\\s]+):(?:([\\d,]+)(?:-([\\d,]+))?)?$", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * The member store.
+   */
+  private TrackStore mStore;
+
+  /**
+   * Maps view rows to store rows, or null if every row is shown in file
+   * order.
+   */
+  private int[] mRows = null;
+
+  /**
+   * The member text.
    */
-  private UCSCTrack mBed;
+  private String mText = "";
 
   /**
-   * The member features.
+   * The member timer.
    */
-  private List<GenomicElement> mFeatures;
+  private final Timer mTimer;
+
+  /**
+   * The member task.
+   */
+  private FilterTask mTask = null;
+
+  /**
+   * Starts the filter once typing pauses.
+   */
+  private class FilterEvents implements ActionListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      if (mTask != null) {
+        mTask.cancel(true);
+      }
+
+      mTask = new FilterTask(mText);
+      mTask.execute();
+    }
+  }
+
+  /**
+   * Finds the matching rows in the background.
+   */
+  private class FilterTask extends SwingWorker<int[], Void> {
+
+    /**
+     * The member text.
+     */
+    private final String mText;
+
+    /**
+     * Instantiates a new filter task.
+     *
+     * @param text the text
+     */
+    public FilterTask(String text) {
+      mText = text;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#doInBackground()
+     */
+    @Override
+    protected int[] doInBackground() throws InterruptedException {
+      return search(mText);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#done()
+     */
+    @Override
+    protected void done() {
+      // Ignore queries that have been superseded
+      if (isCancelled() || mTask != this) {
+        return;
+      }
+
+      mTask = null;
+
+      try {
+        setRows(get());
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } catch (ExecutionException e) {
+        e.printStackTrace();
+      }
+    }
+  }
 
   /**
    * Instantiates a new bed table model.
@@ -63,8 +176,19 @@ public class BedTableModel extends ModernTableModel {
    * @param bed the bed
    */
   public BedTableModel(UCSCTrack bed) {
-    mBed = bed;
-    mFeatures = bed.getElements();
+    this(TrackStoreService.getInstance().getStore(bed));
+  }
+
+  /**
+   * Instantiates a new bed table model.
+   *
+   * @param store the store
+   */
+  public BedTableModel(TrackStore store) {
+    mStore = store;
+
+    mTimer = new Timer(FILTER_DELAY, new FilterEvents());
+    mTimer.setRepeats(false);
   }
 
   /*
@@ -94,7 +218,7 @@ public class BedTableModel extends ModernTableModel {
    */
   @Override
   public final int getRowCount() {
-    return mBed.getElements().size();
+    return mRows != null ? mRows.length : mStore.size();
   }
 
   /*
@@ -104,15 +228,143 @@ public class BedTableModel extends ModernTableModel {
    */
   @Override
   public Object getValueAt(int row, int column) {
+    int r = getStoreRow(row);
+
     switch (column) {
     case 0:
-      return mFeatures.get(row).getChr().toString();
+      return mStore.getChr(r);
     case 1:
-      return mFeatures.get(row).getStart();
+      return mStore.getStart(r);
     case 2:
-      return mFeatures.get(row).getEnd();
+      return mStore.getEnd(r);
     default:
-      return ((BedElement) mFeatures.get(row)).getName();
+      return mStore.getName(r);
+    }
+  }
+
+  /**
+   * Gets the store row shown at a view row.
+   *
+   * @param row the row
+   * @return the store row
+   */
+  public int getStoreRow(int row) {
+    return mRows != null ? mRows[row] : mStore.getFileRow(row);
+  }
+
+  /**
+   * Gets the store.
+   *
+   * @return the store
+   */
+  public TrackStore getStore() {
+    return mStore;
+  }
+
+  /**
+   * Filter the rows by a location or name fragment. The table updates once
+   * typing pauses. This should be called on the event thread.
+   *
+   * @param text the text
+   */
+  public void filter(String text) {
+    mText = text;
+
+    mTimer.restart();
+  }
+
+  /**
+   * Find the store rows matching a filter.
+   *
+   * @param text the text
+   * @return the rows in source file order or null if every row matches.
+   * @throws InterruptedException if the search was interrupted because it
+   *                              has been superseded.
+   */
+  public int[] search(String text) throws InterruptedException {
+    text = text.trim();
+
+    if (text.length() == 0) {
+      return null;
+    }
+
+    Matcher matcher = LOCATION_PATTERN.matcher(text);
+
+    if (matcher.matches()) {
+      String chr = chr(matcher.group(1));
+
+      if (chr == null) {
+        return new int[0];
+      }
+
+      int start = 1;
+      int end = Integer.MAX_VALUE;
+
+      if (matcher.group(2) != null) {
+        try {
+          start = Integer.parseInt(matcher.group(2).replace(",", ""));
+          end = matcher.group(3) != null ? Integer.parseInt(matcher.group(3).replace(",", "")) : start;
+        } catch (NumberFormatException e) {
+          // Too large to be a position, so nothing can overlap it
+          return new int[0];
+        }
+      }
+
+      return fileOrder(mStore.getIndex().overlap(chr, start, end));
+    } else {
+      return fileOrder(mStore.getNameIndex().search(text));
     }
   }
+
+  /**
+   * Sort store rows, which the indices return in ascending order, into the
+   * order they appear in the source file so that filtering keeps the order
+   * of the unfiltered table.
+   *
+   * @param rows the rows
+   * @return the rows in file order.
+   */
+  private int[] fileOrder(int[] rows) {
+    if (rows.length < 2) {
+      return rows;
+    }
+
+    int[] order = mStore.getFileOrder();
+
+    // Invert the file order to get the file position of each row
+    int[] positions = new int[order.length];
+
+    for (int i = 0; i < order.length; ++i) {
+      positions[order[i]] = i;
+    }
+
+    return TrackSort.sort(positions, rows);
+  }
+
+  /**
+   * Find the store's name for a chromosome ignoring case.
+   *
+   * @param chr the chr
+   * @return the chr or null if the store has no features on it.
+   */
+  private String chr(String chr) {
+    for (String c : mStore.getChrs()) {
+      if (c.equalsIgnoreCase(chr)) {
+        return c;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Sets the rows.
+   *
+   * @param rows the new rows
+   */
+  private void setRows(int[] rows) {
+    mRows = rows;
+
+    fireDataChanged();
+  }
 }
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Least recently used cache of rendered ideogram tiles shared by every
+ * {@link CytobandsLayer}. A tile is keyed by genome, chromosome, pixel size,
+ * display scale and the colours it was drawn with, so changing a theme or
+ * settings colour simply misses the cache and the stale tiles age out.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class CytobandTileCache {
+
+  /**
+   * The maximum number of tiles kept.
+   */
+  public static final int MAX_TILES = 64;
+
+  /**
+   * The Class CytobandTileCacheLoader.
+   */
+  private static class CytobandTileCacheLoader {
+
+    /** The Constant INSTANCE. */
+    private static final CytobandTileCache INSTANCE = new CytobandTileCache();
+  }
+
+  /**
+   * Gets the single instance of CytobandTileCache.
+   *
+   * @return single instance of CytobandTileCache
+   */
+  public static CytobandTileCache getInstance() {
+    return CytobandTileCacheLoader.INSTANCE;
+  }
+
+  /**
+   * Identifies a tile.
+   */
+  public static class Key {
+
+    /**
+     * The member genome.
+     */
+    private final String mGenome;
+
+    /**
+     * The member chr.
+     */
+    private final String mChr;
+
+    /**
+     * The member width.
+     */
+    private final int mW;
+
+    /**
+     * The member height.
+     */
+    private final int mH;
+
+    /**
+     * The member x axis min.
+     */
+    private final double mMin;
+
+    /**
+     * The member x axis max.
+     */
+    private final double mMax;
+
+    /**
+     * The member scale.
+     */
+    private final double mScale;
+
+    /**
+     * The member colors as rgb.
+     */
+    private final int[] mColors;
+
+    /**
+     * Instantiates a new key.
+     *
+     * @param genome the genome
+     * @param chr    the chr
+     * @param w      the w
+     * @param h      the h
+     * @param min    the x axis min
+     * @param max    the x axis max
+     * @param scale  the display scale
+     * @param colors the colors the tile is drawn with.
+     */
+    public Key(Object genome, Object chr, int w, int h, double min, double max, double scale, Color... colors) {
+      mGenome = genome.toString();
+      mChr = chr.toString();
+      mW = w;
+      mH = h;
+      mMin = min;
+      mMax = max;
+      mScale = scale;
+      mColors = new int[colors.length];
+
+      for (int i = 0; i < colors.length; ++i) {
+        mColors[i] = colors[i] != null ? colors[i].getRGB() : 0;
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+
+      Key k = (Key) o;
+
+      return mW == k.mW && mH == k.mH && mMin == k.mMin && mMax == k.mMax && mScale == k.mScale
+          && mChr.equals(k.mChr) && mGenome.equals(k.mGenome) && Arrays.equals(mColors, k.mColors);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      int h = mGenome.hashCode();
+
+      h = 31 * h + mChr.hashCode();
+      h = 31 * h + mW;
+      h = 31 * h + mH;
+      h = 31 * h + Double.hashCode(mMin);
+      h = 31 * h + Double.hashCode(mMax);
+      h = 31 * h + Double.hashCode(mScale);
+      h = 31 * h + Arrays.hashCode(mColors);
+
+      return h;
+    }
+  }
+
+  /**
+   * The member tiles in access order.
+   */
+  private final TileMap mTiles = new TileMap();
+
+  /**
+   * Access ordered map that drops the least recently used tile once full.
+   */
+  private static class TileMap extends LinkedHashMap<Key, BufferedImage> {
+
+    /** The Constant serialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new tile map.
+     */
+    public TileMap() {
+      super(16, 0.75f, true);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+     */
+    @Override
+    protected boolean removeEldestEntry(Entry<Key, BufferedImage> eldest) {
+      return size() > MAX_TILES;
+    }
+  }
+
+  /**
+   * Instantiates a new cytoband tile cache.
+   */
+  private CytobandTileCache() {
+    // Do nothing
+  }
+
+  /**
+   * Gets a tile.
+   *
+   * @param key the key
+   * @return the tile or null if it is not cached.
+   */
+  public synchronized BufferedImage get(Key key) {
+    return mTiles.get(key);
+  }
+
+  /**
+   * Cache a tile.
+   *
+   * @param key   the key
+   * @param image the image
+   */
+  public synchronized void put(Key key, BufferedImage image) {
+    mTiles.put(key, image);
+  }
+
+  /**
+   * Remove every tile, for example after the cytobands of a genome have
+   * been reloaded.
+   */
+  public synchronized void clear() {
+    mTiles.clear();
+  }
+
+  /**
+   * Size.
+   *
+   * @return the int
+   */
+  public synchronized int size() {
+    return mTiles.size();
+  }
+}
@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jebtk.bioinformatics.ext.ucsc.Cytoband;
+import org.jebtk.bioinformatics.ext.ucsc.CytobandsService;
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.Genome;
+
+/**
+ * Cytoband geometry of a genome held as primitive arrays so that ideograms
+ * can be drawn without touching the band objects. Each chromosome's bands
+ * are converted once, on first use, into start, end and stain id arrays with
+ * the centromere bands located in advance. Geometry is shared per genome.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class CytobandsGeometry {
+
+  //
+  // Stain ids to control band color.
+  //
+
+  /** Negative and unrecognised stains. */
+  public static final byte STAIN_NONE = 0;
+
+  /** The Constant STAIN_CENTROMERE. */
+  public static final byte STAIN_CENTROMERE = 1;
+
+  /** The Constant STAIN_25. */
+  public static final byte STAIN_25 = 2;
+
+  /** The Constant STAIN_33. */
+  public static final byte STAIN_33 = 3;
+
+  /** The Constant STAIN_50. */
+  public static final byte STAIN_50 = 4;
+
+  /** The Constant STAIN_66. */
+  public static final byte STAIN_66 = 5;
+
+  /** The Constant STAIN_75. */
+  public static final byte STAIN_75 = 6;
+
+  /** The Constant STAIN_100. */
+  public static final byte STAIN_100 = 7;
+
+  /** The Constant STAIN_GVAR. */
+  public static final byte STAIN_GVAR = 8;
+
+  /** The Constant STAIN_STALK. */
+  public static final byte STAIN_STALK = 9;
+
+  /** The number of stain ids. */
+  public static final int STAINS = 10;
+
+  /** The geometry of each genome. */
+  private static final Map<String, CytobandsGeometry> GENOMES = new ConcurrentHashMap<String, CytobandsGeometry>();
+
+  /**
+   * The bands of one chromosome.
+   */
+  public static class Bands {
+
+    /** The member starts. */
+    private final int[] mStarts;
+
+    /** The member ends. */
+    private final int[] mEnds;
+
+    /** The member stains. */
+    private final byte[] mStains;
+
+    /** Index of the first centromere band or -1. */
+    private final int mCentromere1;
+
+    /** Index of the last centromere band or -1. */
+    private final int mCentromere2;
+
+    /**
+     * Instantiates a new bands.
+     *
+     * @param bands the bands
+     */
+    private Bands(List<Cytoband> bands) {
+      int n = bands.size();
+
+      mStarts = new int[n];
+      mEnds = new int[n];
+      mStains = new byte[n];
+
+      int c1 = -1;
+      int c2 = -1;
+
+      for (int i = 0; i < n; ++i) {
+        Cytoband cytoband = bands.get(i);
+
+        mStarts[i] = cytoband.getStart();
+        mEnds[i] = cytoband.getEnd();
+        mStains[i] = stain(cytoband.getStain());
+
+        if (mStains[i] == STAIN_CENTROMERE) {
+          if (c1 == -1) {
+            c1 = i;
+          }
+
+          c2 = i;
+        }
+      }
+
+      mCentromere1 = c1;
+      mCentromere2 = c2;
+    }
+
+    /**
+     * Size.
+     *
+     * @return the int
+     */
+    public int size() {
+      return mStarts.length;
+    }
+
+    /**
+     * Gets the length of the chromosome covered by the bands.
+     *
+     * @return the length
+     */
+    public int getLength() {
+      return mEnds.length > 0 ? mEnds[mEnds.length - 1] : 0;
+    }
+
+    /**
+     * Gets the start.
+     *
+     * @param i the i
+     * @return the start
+     */
+    public int getStart(int i) {
+      return mStarts[i];
+    }
+
+    /**
+     * Gets the end.
+     *
+     * @param i the i
+     * @return the end
+     */
+    public int getEnd(int i) {
+      return mEnds[i];
+    }
+
+    /**
+     * Gets the stain id.
+     *
+     * @param i the i
+     * @return the stain
+     */
+    public byte getStain(int i) {
+      return mStains[i];
+    }
+
+    /**
+     * Checks for centromere.
+     *
+     * @return true, if successful
+     */
+    public boolean hasCentromere() {
+      return mCentromere1 != -1;
+    }
+
+    /**
+     * Gets the index of the first centromere band.
+     *
+     * @return the index or -1.
+     */
+    public int getCentromere1() {
+      return mCentromere1;
+    }
+
+    /**
+     * Gets the index of the last centromere band.
+     *
+     * @return the index or -1.
+     */
+    public int getCentromere2() {
+      return mCentromere2;
+    }
+
+    /**
+     * Index of the first band ending at or after a position. Bands are
+     * ordered and do not overlap.
+     *
+     * @param position the position
+     * @return the index, or size() if there is none.
+     */
+    public int first(double position) {
+      int lo = 0;
+      int hi = mEnds.length;
+
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+
+        if (mEnds[mid] < position) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+
+      return lo;
+    }
+
+    /**
+     * Index of the last band starting at or before a position.
+     *
+     * @param position the position
+     * @return the index, or -1 if there is none.
+     */
+    public int last(double position) {
+      int lo = 0;
+      int hi = mStarts.length;
+
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+
+        if (mStarts[mid] <= position) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+
+      return lo - 1;
+    }
+  }
+
+  /** The member genome. */
+  private final Genome mGenome;
+
+  /** The bands of each chromosome. */
+  private final Map<String, Bands> mBands = new ConcurrentHashMap<String, Bands>();
+
+  /**
+   * Instantiates a new cytobands geometry.
+   *
+   * @param genome the genome
+   */
+  private CytobandsGeometry(Genome genome) {
+    mGenome = genome;
+  }
+
+  /**
+   * Gets the shared geometry of a genome.
+   *
+   * @param genome the genome
+   * @return the cytobands geometry
+   */
+  public static CytobandsGeometry getInstance(Genome genome) {
+    String key = genome.toString();
+
+    CytobandsGeometry ret = GENOMES.get(key);
+
+    if (ret == null) {
+      ret = new CytobandsGeometry(genome);
+
+      CytobandsGeometry existing = GENOMES.putIfAbsent(key, ret);
+
+      if (existing != null) {
+        ret = existing;
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Gets the bands of a chromosome.
+   *
+   * @param chr the chr
+   * @return the bands
+   */
+  public Bands getBands(Chromosome chr) {
+    String key = chr.toString();
+
+    Bands ret = mBands.get(key);
+
+    if (ret == null) {
+      List<Cytoband> bands = CytobandsService.getInstance().getCytobands(mGenome).getCytobands(chr);
+
+      ret = new Bands(bands != null ? bands : Collections.<Cytoband>emptyList());
+
+      mBands.put(key, ret);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Discard the geometry of every genome, for example after the cytobands
+   * have been reloaded.
+   */
+  public static void clear() {
+    GENOMES.clear();
+  }
+
+  /**
+   * Map a stain name to a stain id.
+   *
+   * @param stain the stain
+   * @return the stain id
+   */
+  public static byte stain(String stain) {
+    if (stain.contains("acen")) {
+      return STAIN_CENTROMERE;
+    } else if (stain.equals("gpos100")) {
+      return STAIN_100;
+    } else if (stain.equals("gvar")) {
+      return STAIN_GVAR;
+    } else if (stain.equals("stalk")) {
+      return STAIN_STALK;
+    } else if (stain.equals("gpos75")) {
+      return STAIN_75;
+    } else if (stain.equals("gpos66")) {
+      return STAIN_66;
+    } else if (stain.equals("gpos50")) {
+      return STAIN_50;
+    } else if (stain.equals("gpos33")) {
+      return STAIN_33;
+    } else if (stain.equals("gpos25")) {
+      return STAIN_25;
+    } else {
+      return STAIN_NONE;
+    }
+  }
+}
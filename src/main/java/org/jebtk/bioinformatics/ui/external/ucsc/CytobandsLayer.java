@@ -18,14 +18,12 @@ package org.jebtk.bioinformatics.ui.external.ucsc;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.Arc2D;
 import java.awt.geom.GeneralPath;
 import java.awt.image.BufferedImage;
-import java.util.List;
 
-import org.jebtk.bioinformatics.ext.ucsc.Cytoband;
 import org.jebtk.bioinformatics.ext.ucsc.Cytobands;
-import org.jebtk.bioinformatics.ext.ucsc.CytobandsService;
 import org.jebtk.bioinformatics.genomic.Chromosome;
 import org.jebtk.bioinformatics.genomic.Genome;
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
@@ -50,47 +48,10 @@ public class CytobandsLayer extends AxesClippedLayer {
   /** The Constant serialVersionUID. */
   private static final long serialVersionUID = 1L;
 
-  //
-  // Stain ids to control band color.
-  //
-
-  /** The Constant CENTROMERE. */
-  private static final String CENTROMERE = "acen";
-
-  /** The Constant STAIN_25. */
-  private static final String STAIN_25 = "gpos25";
-
-  /** The Constant STAIN_50. */
-  private static final String STAIN_50 = "gpos50";
-
-  /** The Constant STAIN_75. */
-  private static final String STAIN_75 = "gpos75";
-
-  /** The Constant STAIN_100. */
-  private static final String STAIN_100 = "gpos100";
-
-  /** The Constant STAIN_GVAR. */
-  private static final String STAIN_GVAR = "gvar";
-
-  /** The Constant STAIN_STALK. */
-  private static final String STAIN_STALK = "stalk";
-
-  /** The Constant STAIN_33. */
-  private static final String STAIN_33 = "gpos33";
-
-  /** The Constant STAIN_66. */
-  private static final String STAIN_66 = "gpos66";
-
   //
   // Band colors.
   //
 
-  /** The Constant BORDER_COLOR. */
-  private static final Color BORDER_COLOR = ThemeService.getInstance().getColors().getGray(10);
-
-  /** The Constant CENTROMERE_COLOR. */
-  private static final Color CENTROMERE_COLOR = SettingsService.getInstance().getColor("cytobands.centromere.color"); // #d35f5f");
-
   /** The Constant COLOR_100. */
   private static final Color COLOR_100 = Color.BLACK;
 
@@ -112,11 +73,24 @@ public class CytobandsLayer extends AxesClippedLayer {
   /** The Constant COLOR_33. */
   private static final Color COLOR_33 = ColorUtils.getGrayScale(0.33);
 
-  /** The m prev chr. */
-  private Chromosome mPrevChr;
-
-  /** The m image. */
-  private BufferedImage mImage;
+  /**
+   * Band color of each stain id. The centromere entry is replaced by the
+   * current settings color when drawing.
+   */
+  private static final Color[] STAIN_COLORS = new Color[CytobandsGeometry.STAINS];
+
+  static {
+    STAIN_COLORS[CytobandsGeometry.STAIN_NONE] = COLOR_BACKGROUND;
+    STAIN_COLORS[CytobandsGeometry.STAIN_CENTROMERE] = COLOR_BACKGROUND;
+    STAIN_COLORS[CytobandsGeometry.STAIN_25] = COLOR_25;
+    STAIN_COLORS[CytobandsGeometry.STAIN_33] = COLOR_33;
+    STAIN_COLORS[CytobandsGeometry.STAIN_50] = COLOR_50;
+    STAIN_COLORS[CytobandsGeometry.STAIN_66] = COLOR_66;
+    STAIN_COLORS[CytobandsGeometry.STAIN_75] = COLOR_75;
+    STAIN_COLORS[CytobandsGeometry.STAIN_100] = COLOR_100;
+    STAIN_COLORS[CytobandsGeometry.STAIN_GVAR] = COLOR_100;
+    STAIN_COLORS[CytobandsGeometry.STAIN_STALK] = COLOR_50;
+  }
 
   protected GenomicRegion mDisplayRegion;
 
@@ -144,6 +118,15 @@ public class CytobandsLayer extends AxesClippedLayer {
     mDisplayRegion = displayRegion;
   }
 
+  /**
+   * Gets the genome.
+   *
+   * @return the genome
+   */
+  public Genome getGenome() {
+    return mGenome;
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -154,7 +137,7 @@ public class CytobandsLayer extends AxesClippedLayer {
   @Override
   public void plotLayer(Graphics2D g2, DrawingContext context, Figure figure, SubFigure subFigure, Axes axes) {
     if (context == DrawingContext.UI) {
-      g2.drawImage(cacheImage(context, subFigure, axes), 0, 0, null);
+      drawCachedImage(g2, context, subFigure, axes);
     } else {
       plotCytobands(g2, context, subFigure, axes);
     }
@@ -163,84 +146,149 @@ public class CytobandsLayer extends AxesClippedLayer {
   }
 
   /**
-   * Cache image.
+   * Gets the ideogram tile for the current chromosome from the shared tile
+   * cache, rendering it if necessary. The tile is rendered at the display
+   * scale of the graphics so that it stays sharp on high DPI screens.
    *
+   * @param g2      the g 2
    * @param context the context
    * @param figure  the figure
    * @param axes    the axes
    * @return the buffered image
    */
-  private BufferedImage cacheImage(DrawingContext context, SubFigure figure, Axes axes) {
+  protected BufferedImage cacheImage(Graphics2D g2, DrawingContext context, SubFigure figure, Axes axes) {
     Chromosome chr = mDisplayRegion.getChr();
 
-    if (mPrevChr == null || !chr.equals(mPrevChr)) {
-      int minX = axes.toPlotX1(axes.getX1Axis().getLimits().getMin());
-      int maxX = axes.toPlotX1(axes.getX1Axis().getLimits().getMax());
-      int y1 = axes.toPlotY1(axes.getY1Axis().getLimits().getMin());
-      int y2 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax());
+    int minX = axes.toPlotX1(axes.getX1Axis().getLimits().getMin());
+    int maxX = axes.toPlotX1(axes.getX1Axis().getLimits().getMax());
+    int y1 = axes.toPlotY1(axes.getY1Axis().getLimits().getMin());
+    int y2 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax());
+
+    int w = maxX - minX + 1;
+    int h = y1 - y2 + 1;
+
+    double scale = Math.max(1, g2.getTransform().getScaleX());
+
+    CytobandTileCache.Key key = new CytobandTileCache.Key(mGenome,
+        chr,
+        w,
+        h,
+        axes.getX1Axis().getLimits().getMin(),
+        axes.getX1Axis().getLimits().getMax(),
+        scale,
+        getBorderColor(),
+        getCentromereColor());
 
-      int w = maxX - minX + 1;
-      int h = y1 - y2 + 1;
+    BufferedImage image = CytobandTileCache.getInstance().get(key);
 
-      mImage = ImageUtils.createImage(w, h);
+    if (image == null) {
+      image = ImageUtils.createImage((int) Math.ceil(w * scale), (int) Math.ceil(h * scale));
 
-      Graphics g = mImage.getGraphics();
+      Graphics g = image.getGraphics();
 
       try {
-        Graphics2D g2 = ImageUtils.createAATextGraphics(g);
+        Graphics2D g2Image = ImageUtils.createAATextGraphics(g);
 
         try {
-          plotCytobands(g2, context, figure, axes);
+          g2Image.scale(scale, scale);
+
+          plotCytobands(g2Image, context, figure, axes);
         } finally {
-          g2.dispose();
+          g2Image.dispose();
         }
       } finally {
         g.dispose();
       }
 
-      mPrevChr = chr;
+      CytobandTileCache.getInstance().put(key, image);
     }
 
-    return mImage;
+    return image;
   }
 
   /**
-   * Plot cytobands.
+   * Draw the cached ideogram tile for the current chromosome. Only the part
+   * of the tile inside the current clip is copied so that small repaints,
+   * such as moving a highlight, stay cheap.
    *
    * @param g2      the g 2
    * @param context the context
    * @param figure  the figure
    * @param axes    the axes
    */
-  private void plotCytobands(Graphics2D g2, DrawingContext context, SubFigure figure, Axes axes) {
-
-    Chromosome chr = mDisplayRegion.getChr();
-    
-    System.err.println("cytolayer:" + chr + " " + mGenome);
-    System.err.println("cytolayerss:" + chr + " " + CytobandsService.getInstance().getCytobands(mGenome));
-    List<Cytoband> bands = CytobandsService.getInstance().getCytobands(mGenome).getCytobands(chr); // mCytobands.getCytobands(mDisplayRegion.getChr());
-
-    // Clipping
-    int centi1 = Integer.MAX_VALUE;
-    int centi2 = Integer.MIN_VALUE;
+  protected void drawCachedImage(Graphics2D g2, DrawingContext context, SubFigure figure, Axes axes) {
+    BufferedImage image = cacheImage(g2, context, figure, axes);
 
-    boolean hasCentromere = false;
+    double scale = Math.max(1, g2.getTransform().getScaleX());
 
-    for (int i = 0; i < bands.size(); ++i) {
-      Cytoband cytoband = bands.get(i);
+    Rectangle bounds = new Rectangle(0,
+        0,
+        (int) Math.round(image.getWidth() / scale),
+        (int) Math.round(image.getHeight() / scale));
 
-      // determine the look from the stain value
+    Rectangle clip = g2.getClipBounds();
 
-      if (cytoband.getStain().contains(CENTROMERE)) {
-        centi1 = Math.min(i, centi1);
-        centi2 = Math.max(i, centi2);
+    if (clip != null) {
+      bounds = bounds.intersection(clip);
 
-        hasCentromere = true;
+      if (bounds.isEmpty()) {
+        return;
       }
     }
 
-    if (hasCentromere) {
-      plotCentromere(g2, axes, bands, centi1, centi2);
+    g2.drawImage(image,
+        bounds.x,
+        bounds.y,
+        bounds.x + bounds.width,
+        bounds.y + bounds.height,
+        (int) (bounds.x * scale),
+        (int) (bounds.y * scale),
+        (int) Math.ceil((bounds.x + bounds.width) * scale),
+        (int) Math.ceil((bounds.y + bounds.height) * scale),
+        null);
+  }
+
+  /**
+   * Gets the border color from the current theme.
+   *
+   * @return the border color
+   */
+  protected static Color getBorderColor() {
+    return ThemeService.getInstance().getColors().getGray(10);
+  }
+
+  /**
+   * Gets the band color of a stain id.
+   *
+   * @param stain the stain
+   * @return the stain color
+   */
+  protected static Color getStainColor(byte stain) {
+    return STAIN_COLORS[stain];
+  }
+
+  /**
+   * Gets the centromere color from the current settings.
+   *
+   * @return the centromere color
+   */
+  protected static Color getCentromereColor() {
+    return SettingsService.getInstance().getColor("cytobands.centromere.color");
+  }
+
+  /**
+   * Plot cytobands.
+   *
+   * @param g2      the g 2
+   * @param context the context
+   * @param figure  the figure
+   * @param axes    the axes
+   */
+  private void plotCytobands(Graphics2D g2, DrawingContext context, SubFigure figure, Axes axes) {
+    CytobandsGeometry.Bands bands = CytobandsGeometry.getInstance(mGenome).getBands(mDisplayRegion.getChr());
+
+    if (bands.hasCentromere()) {
+      plotCentromere(g2, axes, bands);
     } else {
       plot(g2, axes, bands);
     }
@@ -249,13 +297,11 @@ public class CytobandsLayer extends AxesClippedLayer {
   /**
    * Plot centromere.
    *
-   * @param g2     the g 2
-   * @param axes   the axes
-   * @param bands  the bands
-   * @param centi1 the centi 1
-   * @param centi2 the centi 2
+   * @param g2    the g 2
+   * @param axes  the axes
+   * @param bands the bands
    */
-  private static void plotCentromere(Graphics2D g2, Axes axes, List<Cytoband> bands, int centi1, int centi2) {
+  private static void plotCentromere(Graphics2D g2, Axes axes, CytobandsGeometry.Bands bands) {
     int y1 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax() * 0.8);
     int y2 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax() * 0.2);
     int h = y2 - y1 + 1;
@@ -264,12 +310,17 @@ public class CytobandsLayer extends AxesClippedLayer {
     int minX = axes.toPlotX1(axes.getX1Axis().getLimits().getMin()) + 1;
     int maxX = axes.toPlotX1(axes.getX1Axis().getLimits().getMax()) - 1;
 
-    int cent1Start = axes.toPlotX1(bands.get(centi1).getStart());
-    int cent2End = axes.toPlotX1(bands.get(centi2).getEnd());
+    int centi1 = bands.getCentromere1();
+    int centi2 = bands.getCentromere2();
+
+    int cent1Start = axes.toPlotX1(bands.getStart(centi1));
+    int cent2End = axes.toPlotX1(bands.getEnd(centi2));
     int centW = cent2End - cent1Start;
     int centW2 = centW / 2 + centW % 2;
     int centMid = (cent1Start + cent2End) / 2;
 
+    Color centromereColor = getCentromereColor();
+
     Graphics2D g2Temp;
 
     //
@@ -295,7 +346,7 @@ public class CytobandsLayer extends AxesClippedLayer {
 
       drawBands(g2Temp, axes, bands, y1, h, 0, centi1 - 1);
 
-      g2Temp.setColor(CENTROMERE_COLOR);
+      g2Temp.setColor(centromereColor);
       g2Temp.fillRect(centMid - centW2, y1, centW2, h);
     } finally {
       g2Temp.dispose();
@@ -322,7 +373,7 @@ public class CytobandsLayer extends AxesClippedLayer {
 
       drawBands(g2Temp, axes, bands, y1, h, centi2 + 1, bands.size() - 1);
 
-      g2Temp.setColor(CENTROMERE_COLOR);
+      g2Temp.setColor(centromereColor);
       g2Temp.fillRect(centMid, y1, centW2, h);
     } finally {
       g2Temp.dispose();
@@ -332,7 +383,7 @@ public class CytobandsLayer extends AxesClippedLayer {
     // Border
     //
 
-    g2.setColor(BORDER_COLOR);
+    g2.setColor(getBorderColor());
 
     g2.draw(clip1);
     g2.draw(clip2);
@@ -345,7 +396,7 @@ public class CytobandsLayer extends AxesClippedLayer {
    * @param axes  the axes
    * @param bands the bands
    */
-  private static void plot(Graphics2D g2, Axes axes, List<Cytoband> bands) {
+  private static void plot(Graphics2D g2, Axes axes, CytobandsGeometry.Bands bands) {
     int y1 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax() * 0.8);
     int y2 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax() * 0.2);
     int h = y2 - y1 + 1;
@@ -392,7 +443,7 @@ public class CytobandsLayer extends AxesClippedLayer {
   }
 
   /**
-   * Draw bands.
+   * Draw the bands from i1 to i2 that fall within the x axis limits.
    *
    * @param g2    the g 2
    * @param axes  the axes
@@ -402,50 +453,25 @@ public class CytobandsLayer extends AxesClippedLayer {
    * @param i1    the i 1
    * @param i2    the i 2
    */
-  private static void drawBands(Graphics2D g2, Axes axes, List<Cytoband> bands, int y, int h, int i1, int i2) {
-    for (int i = i1; i <= i2; ++i) {
-      Cytoband cytoband = bands.get(i);
-
-      // determine the look from the stain value
-
-      boolean isCentromere = cytoband.getStain().contains(CENTROMERE);
-
-      Color color;
-
-      if (isCentromere) {
-        color = CENTROMERE_COLOR;
-      } else if (cytoband.getStain().equals(STAIN_100)) {
-        color = COLOR_100; // ThemeService.getInstance().getColors().getHighlight(6);
-      } else if (cytoband.getStain().equals(STAIN_GVAR)) {
-        color = COLOR_100;
-      } else if (cytoband.getStain().equals(STAIN_STALK)) {
-        color = COLOR_50;
-      } else if (cytoband.getStain().equals(STAIN_75)) {
-        color = COLOR_75;
-      } else if (cytoband.getStain().equals(STAIN_66)) {
-        color = COLOR_66;
-      } else if (cytoband.getStain().equals(STAIN_50)) {
-        color = COLOR_50;
-      } else if (cytoband.getStain().equals(STAIN_33)) {
-        color = COLOR_33;
-      } else if (cytoband.getStain().equals(STAIN_25)) {
-        color = COLOR_25;
-      } else {
-        color = COLOR_BACKGROUND;
-      }
-
-      g2.setColor(color);
+  private static void drawBands(Graphics2D g2,
+      Axes axes,
+      CytobandsGeometry.Bands bands,
+      int y,
+      int h,
+      int i1,
+      int i2) {
+    i1 = Math.max(i1, bands.first(axes.getX1Axis().getLimits().getMin()));
+    i2 = Math.min(i2, bands.last(axes.getX1Axis().getLimits().getMax()));
+
+    Color centromereColor = getCentromereColor();
 
-      // g2.drawString(id, textX - g2.getFontMetrics().stringWidth(id), textY);
-
-      int x1 = axes.toPlotX1(cytoband.getStart());
-      int x2 = axes.toPlotX1(cytoband.getEnd());
+    for (int i = i1; i <= i2; ++i) {
+      byte stain = bands.getStain(i);
 
-      // System.err.println("x1 " + x1 + " " + x2 + " " + g.getStart() + " " +
-      // g.getEnd());
+      g2.setColor(stain == CytobandsGeometry.STAIN_CENTROMERE ? centromereColor : STAIN_COLORS[stain]);
 
-      // px1 = Mathematics.bound(x1, minX, maxX);
-      // px2 = Mathematics.bound(x2, minX, maxX);
+      int x1 = axes.toPlotX1(bands.getStart(i));
+      int x2 = axes.toPlotX1(bands.getEnd(i));
 
       int w = Math.max(1, x2 - x1);
 
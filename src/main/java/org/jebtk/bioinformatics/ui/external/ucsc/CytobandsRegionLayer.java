@@ -16,8 +16,13 @@
 package org.jebtk.bioinformatics.ui.external.ucsc;
 
 import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
+import java.awt.geom.NoninvertibleTransformException;
 
 import org.jebtk.bioinformatics.ext.ucsc.Cytobands;
 import org.jebtk.bioinformatics.genomic.ChromosomeService;
@@ -57,6 +62,22 @@ public class CytobandsRegionLayer extends CytobandsLayer {
   /** The m triangle. */
   private GeneralPath mTriangle;
 
+  /** The axes last plotted on. */
+  private Axes mAxes = null;
+
+  /** The highlight bounds last painted or repainted in plot coordinates. */
+  private Rectangle mHighlight = null;
+
+  /**
+   * The transform the layer was last painted with in the UI, which maps plot
+   * coordinates to device space through the figure, sub figure and axes
+   * offsets.
+   */
+  private AffineTransform mTransform = null;
+
+  /** The component the layer is drawn in. */
+  private Component mCanvas = null;
+
   /**
    * Instantiates a new cytobands region layer.
    *
@@ -84,34 +105,31 @@ public class CytobandsRegionLayer extends CytobandsLayer {
    */
   @Override
   public void plotLayer(Graphics2D g2, DrawingContext context, Figure figure, SubFigure subFigure, Axes axes) {
-    super.plotLayer(g2, context, figure, subFigure, axes);
+    mAxes = axes;
 
-    int minX = axes.toPlotX1(axes.getX1Axis().getLimits().getMin());
-    int maxX = axes.toPlotX1(axes.getX1Axis().getLimits().getMax()) - 1;
+    // Only a paint of the canvas tells us where the plot sits within it
+    mTransform = context == DrawingContext.UI ? g2.getTransform() : null;
 
-    int y1 = axes.toPlotY1(axes.getY1Axis().getLimits().getMin()) - 1;
-    int y2 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax()) + 1;
-    int h = y1 - y2;
+    Rectangle highlight = highlightBounds(axes);
+
+    if (context == DrawingContext.UI) {
+      // The bands come from the shared tile cache so only the parts inside
+      // the repaint clip, usually just the old and new highlight, are
+      // copied
+      drawCachedImage(g2, context, subFigure, axes);
+    } else {
+      super.plotLayer(g2, context, figure, subFigure, axes);
+    }
 
     //
     // Display region
     //
 
-    // g2.drawString(id, textX - g2.getFontMetrics().stringWidth(id), textY);
-
-    int x1 = Mathematics.bound(axes.toPlotX1(mDisplayRegion.getStart()), minX, maxX);
-    int x2 = Mathematics.bound(axes.toPlotX1(mDisplayRegion.getEnd()), minX, maxX);
-
-    // px1 = Mathematics.bound(x1, minX, maxX);
-    // px2 = Mathematics.bound(x2, minX, maxX);
-
-    int w = Math.max(3, x2 - x1);
-
     g2.setColor(REGION_FILL_COLOR);
-    g2.fillRect(x1, y2, w, h);
+    g2.fillRect(highlight.x, highlight.y, highlight.width, highlight.height);
 
     g2.setColor(REGION_COLOR);
-    g2.drawRect(x1, y2, w, h);
+    g2.drawRect(highlight.x, highlight.y, highlight.width, highlight.height);
 
     /*
      * // Triangles
@@ -120,6 +138,138 @@ public class CytobandsRegionLayer extends CytobandsLayer {
      * 
      * drawTriangle(g2, x1, y); drawTriangle(g2, Math.max(x1 + w, x2), y);
      */
+
+    mHighlight = highlight;
+  }
+
+  /**
+   * Sets the component the layer is drawn in. The canvas that owns the
+   * layer should call this when it adds the layer. When the region moves
+   * within a chromosome only the old and new highlight are repainted; the
+   * bands come from the tile cache so nothing else needs to be drawn.
+   *
+   * @param canvas the new canvas
+   */
+  public void setCanvas(Component canvas) {
+    mCanvas = canvas;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * org.jebtk.bioinformatics.ui.external.ucsc.CytobandsLayer#setRegion(org.
+   * jebtk.bioinformatics.genomic.Genome,
+   * org.jebtk.bioinformatics.genomic.GenomicRegion)
+   */
+  @Override
+  public void setRegion(Genome genome, GenomicRegion displayRegion) {
+    // A different chromosome or genome means a different ideogram
+    boolean changed = mDisplayRegion == null || !genome.equals(getGenome())
+        || !displayRegion.getChr().equals(mDisplayRegion.getChr());
+
+    super.setRegion(genome, displayRegion);
+
+    if (mCanvas == null) {
+      return;
+    }
+
+    if (changed || mAxes == null || mHighlight == null) {
+      mHighlight = null;
+
+      mCanvas.repaint();
+
+      return;
+    }
+
+    Rectangle highlight = highlightBounds(mAxes);
+
+    Rectangle dirty = new Rectangle(mHighlight);
+    dirty.add(highlight);
+
+    // Allow for the outline stroke
+    dirty.grow(1, 1);
+
+    dirty = toCanvas(dirty);
+
+    if (dirty != null) {
+      mCanvas.repaint(dirty.x, dirty.y, dirty.width, dirty.height);
+    } else {
+      mCanvas.repaint();
+    }
+
+    // The repaint covers the new highlight so the next move starts from it
+    mHighlight = highlight;
+  }
+
+  /**
+   * Convert a rectangle in plot coordinates to the coordinates of the
+   * canvas. The transform recorded when the layer was painted includes the
+   * canvas's own position within its window, so it is removed using the
+   * canvas's graphics, which share the same device space.
+   *
+   * @param r the rectangle in plot coordinates
+   * @return the rectangle in canvas coordinates or null if it cannot be
+   *         determined.
+   */
+  private Rectangle toCanvas(Rectangle r) {
+    if (mTransform == null) {
+      return null;
+    }
+
+    Graphics g = mCanvas.getGraphics();
+
+    if (g == null) {
+      // Not displayable
+      return null;
+    }
+
+    AffineTransform transform;
+
+    try {
+      transform = ((Graphics2D) g).getTransform().createInverse();
+    } catch (NoninvertibleTransformException e) {
+      return null;
+    } finally {
+      g.dispose();
+    }
+
+    transform.concatenate(mTransform);
+
+    // Round outwards so the repaint covers every partially touched pixel
+    Rectangle ret = transform.createTransformedShape(r).getBounds();
+
+    ret.grow(1, 1);
+
+    // A highlight outside the canvas means the mapping is stale, for
+    // example the canvas has been laid out again since it last painted
+    if (!ret.intersects(0, 0, mCanvas.getWidth(), mCanvas.getHeight())) {
+      return null;
+    }
+
+    return ret;
+  }
+
+  /**
+   * Bounds of the region highlight.
+   *
+   * @param axes the axes
+   * @return the rectangle
+   */
+  private Rectangle highlightBounds(Axes axes) {
+    int minX = axes.toPlotX1(axes.getX1Axis().getLimits().getMin());
+    int maxX = axes.toPlotX1(axes.getX1Axis().getLimits().getMax()) - 1;
+
+    int y1 = axes.toPlotY1(axes.getY1Axis().getLimits().getMin()) - 1;
+    int y2 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax()) + 1;
+    int h = y1 - y2;
+
+    int x1 = Mathematics.bound(axes.toPlotX1(mDisplayRegion.getStart()), minX, maxX);
+    int x2 = Mathematics.bound(axes.toPlotX1(mDisplayRegion.getEnd()), minX, maxX);
+
+    int w = Math.max(3, x2 - x1);
+
+    return new Rectangle(x1, y2, w, h);
   }
 
   /**
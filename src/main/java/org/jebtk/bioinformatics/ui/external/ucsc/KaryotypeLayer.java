@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jebtk.bioinformatics.genomic.Chromosome;
+import org.jebtk.bioinformatics.genomic.ChromosomeService;
+import org.jebtk.bioinformatics.genomic.Genome;
+import org.jebtk.graphplot.figure.Axes;
+import org.jebtk.graphplot.figure.AxesClippedLayer;
+import org.jebtk.graphplot.figure.Figure;
+import org.jebtk.graphplot.figure.SubFigure;
+import org.jebtk.modern.graphics.DrawingContext;
+import org.jebtk.modern.graphics.ImageUtils;
+
+/**
+ * Draws the ideograms of a whole karyotype, one chromosome per row, in a
+ * single pass. The outlines of every chromosome arm are combined into one
+ * clip, the bands of each stain are gathered into one path and filled once,
+ * and the finished image is kept in the shared {@link CytobandTileCache} so
+ * that repaints cost a single image copy.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class KaryotypeLayer extends AxesClippedLayer {
+
+  /** The Constant serialVersionUID. */
+  private static final long serialVersionUID = 1L;
+
+  /** The chromosomes drawn, in order. */
+  private static final String[] CHRS = { "chr1", "chr2", "chr3", "chr4", "chr5", "chr6", "chr7", "chr8", "chr9",
+      "chr10", "chr11", "chr12", "chr13", "chr14", "chr15", "chr16", "chr17", "chr18", "chr19", "chr20", "chr21",
+      "chr22", "chrX", "chrY" };
+
+  /** Width reserved for the chromosome names. */
+  private static final int LABEL_WIDTH = 40;
+
+  /** Fraction of each row taken by the ideogram. */
+  private static final double BAR_HEIGHT = 0.6;
+
+  /** The member genome. */
+  private Genome mGenome;
+
+  /**
+   * Instantiates a new karyotype layer.
+   *
+   * @param genome the genome
+   */
+  public KaryotypeLayer(Genome genome) {
+    super("Karyotype");
+
+    setGenome(genome);
+  }
+
+  /**
+   * Sets the genome.
+   *
+   * @param genome the new genome
+   */
+  public void setGenome(Genome genome) {
+    mGenome = genome;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.graphplot.figure.AxesClippedLayer#plotLayer(java.awt.Graphics2D,
+   * org.jebtk.ui.graphics.DrawingContext, org.graphplot.figure.SubFigure,
+   * org.graphplot.figure.Axes)
+   */
+  @Override
+  public void plotLayer(Graphics2D g2, DrawingContext context, Figure figure, SubFigure subFigure, Axes axes) {
+    Rectangle bounds = plotBounds(axes);
+
+    if (context != DrawingContext.UI) {
+      plotKaryotype(g2, bounds);
+      return;
+    }
+
+    double scale = Math.max(1, g2.getTransform().getScaleX());
+
+    CytobandTileCache.Key key = new CytobandTileCache.Key(mGenome,
+        "karyotype",
+        bounds.width,
+        bounds.height,
+        bounds.x,
+        bounds.y,
+        scale,
+        CytobandsLayer.getBorderColor(),
+        CytobandsLayer.getCentromereColor());
+
+    BufferedImage image = CytobandTileCache.getInstance().get(key);
+
+    if (image == null) {
+      image = ImageUtils.createImage((int) Math.ceil(bounds.width * scale), (int) Math.ceil(bounds.height * scale));
+
+      Graphics g = image.getGraphics();
+
+      try {
+        Graphics2D g2Image = ImageUtils.createAATextGraphics(g);
+
+        try {
+          g2Image.scale(scale, scale);
+          g2Image.translate(-bounds.x, -bounds.y);
+
+          plotKaryotype(g2Image, bounds);
+        } finally {
+          g2Image.dispose();
+        }
+      } finally {
+        g.dispose();
+      }
+
+      CytobandTileCache.getInstance().put(key, image);
+    }
+
+    g2.drawImage(image, bounds.x, bounds.y, bounds.width, bounds.height, null);
+  }
+
+  /**
+   * The area of the axes to draw in.
+   *
+   * @param axes the axes
+   * @return the rectangle
+   */
+  private static Rectangle plotBounds(Axes axes) {
+    int minX = axes.toPlotX1(axes.getX1Axis().getLimits().getMin());
+    int maxX = axes.toPlotX1(axes.getX1Axis().getLimits().getMax());
+    int y1 = axes.toPlotY1(axes.getY1Axis().getLimits().getMin());
+    int y2 = axes.toPlotY1(axes.getY1Axis().getLimits().getMax());
+
+    return new Rectangle(minX, Math.min(y1, y2), maxX - minX + 1, Math.abs(y1 - y2) + 1);
+  }
+
+  /**
+   * Plot every chromosome.
+   *
+   * @param g2     the g 2
+   * @param bounds the bounds
+   */
+  private void plotKaryotype(Graphics2D g2, Rectangle bounds) {
+    List<String> names = new ArrayList<String>(CHRS.length);
+    List<CytobandsGeometry.Bands> chrs = new ArrayList<CytobandsGeometry.Bands>(CHRS.length);
+
+    int maxLength = 0;
+
+    for (String name : CHRS) {
+      Chromosome chr = ChromosomeService.getInstance().chr(mGenome, name);
+
+      CytobandsGeometry.Bands bands = CytobandsGeometry.getInstance(mGenome).getBands(chr);
+
+      if (bands.size() > 0) {
+        names.add(name);
+        chrs.add(bands);
+
+        maxLength = Math.max(maxLength, bands.getLength());
+      }
+    }
+
+    if (chrs.isEmpty()) {
+      return;
+    }
+
+    double rowHeight = (double) bounds.height / chrs.size();
+    int h = Math.max(2, (int) (rowHeight * BAR_HEIGHT));
+    int x0 = bounds.x + LABEL_WIDTH;
+    double bpPerPixel = (double) maxLength / Math.max(1, bounds.width - LABEL_WIDTH - 1);
+
+    Area outline = new Area();
+
+    Path2D[] stains = new Path2D[CytobandsGeometry.STAINS];
+
+    for (int s = 0; s < stains.length; ++s) {
+      stains[s] = new Path2D.Float();
+    }
+
+    g2.setColor(Color.BLACK);
+
+    for (int c = 0; c < chrs.size(); ++c) {
+      CytobandsGeometry.Bands bands = chrs.get(c);
+
+      int y = bounds.y + (int) (c * rowHeight + (rowHeight - h) / 2);
+
+      int w = (int) (bands.getLength() / bpPerPixel);
+
+      // One rounded outline per arm, pinched at the centromere
+      if (bands.hasCentromere()) {
+        int mid = x0 + (int) ((bands.getStart(bands.getCentromere1()) + bands.getEnd(bands.getCentromere2())) / 2
+            / bpPerPixel);
+
+        outline.add(new Area(arm(x0, y, mid - x0, h)));
+        outline.add(new Area(arm(mid, y, x0 + w - mid, h)));
+      } else {
+        outline.add(new Area(arm(x0, y, w, h)));
+      }
+
+      for (int i = 0; i < bands.size(); ++i) {
+        int x1 = x0 + (int) (bands.getStart(i) / bpPerPixel);
+        int x2 = x0 + (int) (bands.getEnd(i) / bpPerPixel);
+
+        stains[bands.getStain(i)].append(new Rectangle(x1, y, Math.max(1, x2 - x1), h), false);
+      }
+
+      g2.drawString(names.get(c).substring(3), bounds.x, y + h);
+    }
+
+    //
+    // Bands, one fill per stain within the shared outline
+    //
+
+    Graphics2D g2Temp = ImageUtils.clone(g2);
+
+    try {
+      g2Temp.clip(outline);
+
+      for (int s = 0; s < stains.length; ++s) {
+        g2Temp.setColor(s == CytobandsGeometry.STAIN_CENTROMERE ? CytobandsLayer.getCentromereColor()
+            : CytobandsLayer.getStainColor((byte) s));
+
+        g2Temp.fill(stains[s]);
+      }
+    } finally {
+      g2Temp.dispose();
+    }
+
+    //
+    // Border
+    //
+
+    g2.setColor(CytobandsLayer.getBorderColor());
+    g2.draw(outline);
+  }
+
+  /**
+   * A chromosome arm outline with rounded ends.
+   *
+   * @param x the x
+   * @param y the y
+   * @param w the w
+   * @param h the h
+   * @return the shape
+   */
+  private static Shape arm(int x, int y, int w, int h) {
+    return new RoundRectangle2D.Float(x, y, Math.max(1, w), h - 1, h, h);
+  }
+}
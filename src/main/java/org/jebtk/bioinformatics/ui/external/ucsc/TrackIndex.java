@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.util.Arrays;
+
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+
+/**
+ * Per chromosome interval index over a {@link TrackStore}. Since store rows
+ * are sorted by chromosome and start, each chromosome is a contiguous block
+ * of rows which is treated as an implicit, array based, augmented interval
+ * tree (each node records the maximum end in its subtree). Finding the rows
+ * that overlap a region is O(log n + k) where k is the number of overlapping
+ * rows.
+ * 
+ * Coordinates are inclusive, so a row overlaps a region if
+ * {@code start <= region end} and {@code end >= region start}.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class TrackIndex {
+
+  /**
+   * Subtrees smaller than this are scanned linearly.
+   */
+  private static final int LEAF_K = 3;
+
+  /**
+   * The Constant NO_ROWS.
+   */
+  private static final int[] NO_ROWS = new int[0];
+
+  /**
+   * The member store.
+   */
+  private final TrackStore mStore;
+
+  /**
+   * The first row of each chromosome.
+   */
+  private final int[] mOffsets;
+
+  /**
+   * The number of rows of each chromosome.
+   */
+  private final int[] mCounts;
+
+  /**
+   * The max end of the subtree rooted at each row, per chromosome.
+   */
+  private final int[][] mMaxEnds;
+
+  /**
+   * The level of the root node, per chromosome.
+   */
+  private final int[] mRootK;
+
+  /**
+   * Instantiates a new track index.
+   *
+   * @param store the store
+   */
+  public TrackIndex(TrackStore store) {
+    mStore = store;
+
+    int chrs = store.getChrs().size();
+
+    mOffsets = new int[chrs];
+    mCounts = new int[chrs];
+    mMaxEnds = new int[chrs][];
+    mRootK = new int[chrs];
+
+    Arrays.fill(mOffsets, -1);
+
+    for (int i = 0; i < store.size(); ++i) {
+      int id = store.getChrId(i);
+
+      if (mOffsets[id] == -1) {
+        mOffsets[id] = i;
+      }
+
+      ++mCounts[id];
+    }
+
+    for (int id = 0; id < chrs; ++id) {
+      if (mCounts[id] > 0) {
+        mMaxEnds[id] = new int[mCounts[id]];
+        mRootK[id] = index(mOffsets[id], mCounts[id], mMaxEnds[id]);
+      }
+    }
+  }
+
+  /**
+   * Gets the store.
+   *
+   * @return the store
+   */
+  public TrackStore getStore() {
+    return mStore;
+  }
+
+  /**
+   * Compute the subtree max ends of the rows of one chromosome.
+   *
+   * @param offset the first row
+   * @param n      the number of rows
+   * @param max    the max ends
+   * @return the level of the root node.
+   */
+  private int index(int offset, int n, int[] max) {
+    long lastI = 0;
+    int last = 0;
+
+    // Leaves are the even rows
+    for (int i = 0; i < n; i += 2) {
+      lastI = i;
+      last = max[i] = mStore.getEnd(offset + i);
+    }
+
+    int k;
+
+    for (k = 1; (1L << k) <= n; ++k) {
+      long x = 1L << (k - 1);
+      long i0 = (x << 1) - 1;
+      long step = x << 2;
+
+      for (long i = i0; i < n; i += step) {
+        int el = max[(int) (i - x)];
+        int er = i + x < n ? max[(int) (i + x)] : last;
+        int e = mStore.getEnd(offset + (int) i);
+
+        e = Math.max(e, Math.max(el, er));
+
+        max[(int) i] = e;
+      }
+
+      // Track the rightmost node at this level so that nodes whose right
+      // subtree is past the end of the array still get a correct max
+      lastI = ((lastI >> k) & 1) != 0 ? lastI - x : lastI + x;
+
+      if (lastI < n && max[(int) lastI] > last) {
+        last = max[(int) lastI];
+      }
+    }
+
+    return k - 1;
+  }
+
+  /**
+   * Find the rows overlapping a region.
+   *
+   * @param region the region
+   * @return the rows in ascending order.
+   */
+  public int[] overlap(GenomicRegion region) {
+    return overlap(region.getChr().toString(), region.getStart(), region.getEnd());
+  }
+
+  /**
+   * Find the rows overlapping a region.
+   *
+   * @param chr   the chr
+   * @param start the start
+   * @param end   the end
+   * @return the rows in ascending order.
+   */
+  public int[] overlap(String chr, int start, int end) {
+    int id = mStore.getChrId(chr);
+
+    if (id == -1 || mCounts[id] == 0) {
+      return NO_ROWS;
+    }
+
+    int offset = mOffsets[id];
+    int n = mCounts[id];
+    int[] max = mMaxEnds[id];
+
+    int[] ret = new int[16];
+    int size = 0;
+
+    // Explicit stack for a preorder traversal: level, node and whether the
+    // left child has been visited
+    int[] stackK = new int[64];
+    long[] stackX = new long[64];
+    boolean[] stackW = new boolean[64];
+    int t = 0;
+
+    stackK[t] = mRootK[id];
+    stackX[t] = (1L << mRootK[id]) - 1;
+    stackW[t++] = false;
+
+    while (t > 0) {
+      --t;
+
+      int k = stackK[t];
+      long x = stackX[t];
+      boolean w = stackW[t];
+
+      if (k <= LEAF_K) {
+        // Small subtree so scan it
+        long i0 = x >> k << k;
+        long i1 = Math.min(i0 + (1L << (k + 1)) - 1, n);
+
+        for (long i = i0; i < i1 && mStore.getStart(offset + (int) i) <= end; ++i) {
+          if (start <= mStore.getEnd(offset + (int) i)) {
+            if (size == ret.length) {
+              ret = Arrays.copyOf(ret, size * 2);
+            }
+
+            ret[size++] = offset + (int) i;
+          }
+        }
+      } else if (!w) {
+        long y = x - (1L << (k - 1));
+
+        // Revisit this node once its left subtree is done
+        stackK[t] = k;
+        stackX[t] = x;
+        stackW[t++] = true;
+
+        if (y >= n || max[(int) y] >= start) {
+          stackK[t] = k - 1;
+          stackX[t] = y;
+          stackW[t++] = false;
+        }
+      } else if (x < n && mStore.getStart(offset + (int) x) <= end) {
+        if (start <= mStore.getEnd(offset + (int) x)) {
+          if (size == ret.length) {
+            ret = Arrays.copyOf(ret, size * 2);
+          }
+
+          ret[size++] = offset + (int) x;
+        }
+
+        stackK[t] = k - 1;
+        stackX[t] = x + (1L << (k - 1));
+        stackW[t++] = false;
+      }
+    }
+
+    return Arrays.copyOf(ret, size);
+  }
+}
@@ -0,0 +1,325 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Trigram index over the names of a {@link TrackStore} for case insensitive
+ * substring search. Trigrams are hashed into a fixed number of buckets and
+ * each bucket stores the ascending rows whose names contain one of its
+ * trigrams. A query intersects the posting lists of its trigrams, starting
+ * with the shortest, and then checks the few remaining candidates against
+ * the names themselves. Searches check for thread interruption so that a
+ * superseded query can be abandoned. The index should be built when its
+ * store is loaded, off the event thread, since it reads every name.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class TrackNameIndex {
+
+  /**
+   * The number of bits used for a trigram bucket.
+   */
+  private static final int BUCKET_BITS = 16;
+
+  /**
+   * The constant BUCKETS.
+   */
+  private static final int BUCKETS = 1 << BUCKET_BITS;
+
+  /**
+   * How often long scans check whether they have been interrupted.
+   */
+  private static final int CHECK_INTERVAL = 65536;
+
+  /**
+   * The member offsets.
+   */
+  private final IntBuffer mOffsets;
+
+  /**
+   * The member names.
+   */
+  private final ByteBuffer mNames;
+
+  /**
+   * The member size.
+   */
+  private final int mSize;
+
+  /**
+   * Where each bucket's rows start in the postings.
+   */
+  private final int[] mStarts = new int[BUCKETS + 1];
+
+  /**
+   * The member postings.
+   */
+  private final int[] mPostings;
+
+  /**
+   * Instantiates a new track name index.
+   *
+   * @param store the store
+   */
+  public TrackNameIndex(TrackStore store) {
+    mSize = store.size();
+    mOffsets = store.getNameOffsets();
+    mNames = store.getNames();
+
+    if (mNames == null) {
+      mPostings = new int[0];
+      return;
+    }
+
+    // Rows are visited in order so remembering the last row added to a
+    // bucket is enough to add each row to a bucket only once
+    int[] last = new int[BUCKETS];
+    Arrays.fill(last, -1);
+
+    for (int r = 0; r < mSize; ++r) {
+      int end = mOffsets.get(r + 1) - 2;
+
+      for (int i = mOffsets.get(r); i < end; ++i) {
+        int b = bucket(mNames.get(i), mNames.get(i + 1), mNames.get(i + 2));
+
+        if (last[b] != r) {
+          last[b] = r;
+          ++mStarts[b + 1];
+        }
+      }
+    }
+
+    for (int b = 0; b < BUCKETS; ++b) {
+      mStarts[b + 1] += mStarts[b];
+    }
+
+    mPostings = new int[mStarts[BUCKETS]];
+
+    int[] fill = Arrays.copyOf(mStarts, BUCKETS);
+    Arrays.fill(last, -1);
+
+    for (int r = 0; r < mSize; ++r) {
+      int end = mOffsets.get(r + 1) - 2;
+
+      for (int i = mOffsets.get(r); i < end; ++i) {
+        int b = bucket(mNames.get(i), mNames.get(i + 1), mNames.get(i + 2));
+
+        if (last[b] != r) {
+          last[b] = r;
+          mPostings[fill[b]++] = r;
+        }
+      }
+    }
+  }
+
+  /**
+   * Find the rows whose names contain a fragment, ignoring case.
+   *
+   * @param fragment the fragment
+   * @return the rows in ascending order.
+   * @throws InterruptedException if the thread was interrupted during the
+   *                              search.
+   */
+  public int[] search(String fragment) throws InterruptedException {
+    byte[] query = lower(fragment.getBytes(StandardCharsets.UTF_8));
+
+    if (mNames == null) {
+      return new int[0];
+    }
+
+    if (query.length < 3) {
+      return scan(query);
+    }
+
+    // Intersect the shortest posting lists first so that the candidate set
+    // shrinks as quickly as possible
+    int n = query.length - 2;
+
+    int[] buckets = new int[n];
+
+    for (int i = 0; i < n; ++i) {
+      buckets[i] = bucket(query[i], query[i + 1], query[i + 2]);
+    }
+
+    long[] bySize = new long[n];
+
+    for (int i = 0; i < n; ++i) {
+      int b = buckets[i];
+      bySize[i] = ((long) (mStarts[b + 1] - mStarts[b]) << 32) | b;
+    }
+
+    Arrays.sort(bySize);
+
+    int b = (int) bySize[0];
+    int[] candidates = Arrays.copyOfRange(mPostings, mStarts[b], mStarts[b + 1]);
+    int c = candidates.length;
+
+    for (int i = 1; i < n && c > 0; ++i) {
+      c = intersect(candidates, c, (int) bySize[i]);
+    }
+
+    int[] ret = new int[c];
+    int m = 0;
+
+    for (int i = 0; i < c; ++i) {
+      if (i % CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+        throw new InterruptedException();
+      }
+
+      if (contains(candidates[i], query)) {
+        ret[m++] = candidates[i];
+      }
+    }
+
+    return Arrays.copyOf(ret, m);
+  }
+
+  /**
+   * Check every row for a fragment too short to index.
+   *
+   * @param query the query
+   * @return the rows
+   * @throws InterruptedException if the thread was interrupted.
+   */
+  private int[] scan(byte[] query) throws InterruptedException {
+    int[] ret = new int[mSize];
+    int m = 0;
+
+    for (int r = 0; r < mSize; ++r) {
+      if (r % CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+        throw new InterruptedException();
+      }
+
+      if (contains(r, query)) {
+        ret[m++] = r;
+      }
+    }
+
+    return Arrays.copyOf(ret, m);
+  }
+
+  /**
+   * Intersect the first n candidates with a bucket's rows in place.
+   *
+   * @param candidates the candidates
+   * @param n          the n
+   * @param bucket     the bucket
+   * @return the number of candidates left.
+   */
+  private int intersect(int[] candidates, int n, int bucket) {
+    int p = mStarts[bucket];
+    int end = mStarts[bucket + 1];
+    int m = 0;
+
+    for (int i = 0; i < n && p < end; ++i) {
+      int r = candidates[i];
+
+      while (p < end && mPostings[p] < r) {
+        ++p;
+      }
+
+      if (p < end && mPostings[p] == r) {
+        candidates[m++] = r;
+      }
+    }
+
+    return m;
+  }
+
+  /**
+   * Test whether a row's name contains a lower case query.
+   *
+   * @param row   the row
+   * @param query the query
+   * @return true, if successful
+   */
+  private boolean contains(int row, byte[] query) {
+    int start = mOffsets.get(row);
+    int end = mOffsets.get(row + 1) - query.length;
+
+    for (int i = start; i <= end; ++i) {
+      int j = 0;
+
+      while (j < query.length && lower(mNames.get(i + j)) == query[j]) {
+        ++j;
+      }
+
+      if (j == query.length) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Hash a trigram into a bucket.
+   *
+   * @param b1 the b 1
+   * @param b2 the b 2
+   * @param b3 the b 3
+   * @return the bucket
+   */
+  private static int bucket(byte b1, byte b2, byte b3) {
+    int h = ((lower(b1) & 0xFF) << 16) | ((lower(b2) & 0xFF) << 8) | (lower(b3) & 0xFF);
+
+    h *= 0x9E3779B1;
+
+    return h >>> (32 - BUCKET_BITS);
+  }
+
+  /**
+   * Lower case ASCII letters.
+   *
+   * @param b the b
+   * @return the byte
+   */
+  private static byte lower(byte b) {
+    return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+  }
+
+  /**
+   * Lower case ASCII letters in place.
+   *
+   * @param bytes the bytes
+   * @return the bytes
+   */
+  private static byte[] lower(byte[] bytes) {
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = lower(bytes[i]);
+    }
+
+    return bytes;
+  }
+}
@@ -0,0 +1,504 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+
+/**
+ * Precomputed zoom levels for a {@link TrackStore}, similar to the reduction
+ * levels of a bigWig file. Each level divides every chromosome into fixed
+ * size bins and records the min, max, mean and coverage of the values in each
+ * bin. Each level's bins are four times larger than those of the level below.
+ * Queries pick the coarsest level that still has at least one bin per pixel
+ * so the cost of drawing a region does not depend on the size of the track.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class TrackPyramid {
+
+  /**
+   * How much larger each level's bins are than the level below.
+   */
+  public static final int ZOOM_FACTOR = 4;
+
+  /**
+   * The member store.
+   */
+  private final TrackStore mStore;
+
+  /**
+   * The member levels.
+   */
+  private final List<Level> mLevels = new ArrayList<Level>();
+
+  /**
+   * Summaries of one chromosome at one bin size.
+   */
+  private static class Bins {
+
+    /**
+     * The member min.
+     */
+    private final float[] mMin;
+
+    /**
+     * The member max.
+     */
+    private final float[] mMax;
+
+    /**
+     * Sum of value times covered bases.
+     */
+    private final double[] mSum;
+
+    /**
+     * Number of bases covered by an interval.
+     */
+    private final int[] mCovered;
+
+    /**
+     * Instantiates a new bins.
+     *
+     * @param n the n
+     */
+    public Bins(int n) {
+      mMin = new float[n];
+      mMax = new float[n];
+      mSum = new double[n];
+      mCovered = new int[n];
+
+      Arrays.fill(mMin, Float.POSITIVE_INFINITY);
+      Arrays.fill(mMax, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Size.
+     *
+     * @return the int
+     */
+    public int size() {
+      return mCovered.length;
+    }
+
+    /**
+     * Add bases with a value to a bin.
+     *
+     * @param bin   the bin
+     * @param value the value
+     * @param bases the bases
+     */
+    public void add(int bin, float value, int bases) {
+      mMin[bin] = Math.min(mMin[bin], value);
+      mMax[bin] = Math.max(mMax[bin], value);
+      mSum[bin] += (double) value * bases;
+      mCovered[bin] += bases;
+    }
+
+    /**
+     * Merge a bin of another set of bins into a bin of this one.
+     *
+     * @param bin   the bin
+     * @param other the other
+     * @param i     the bin in the other set.
+     */
+    public void merge(int bin, Bins other, int i) {
+      if (other.mCovered[i] == 0) {
+        return;
+      }
+
+      mMin[bin] = Math.min(mMin[bin], other.mMin[i]);
+      mMax[bin] = Math.max(mMax[bin], other.mMax[i]);
+      mSum[bin] += other.mSum[i];
+      mCovered[bin] += other.mCovered[i];
+    }
+  }
+
+  /**
+   * One zoom level.
+   */
+  private static class Level {
+
+    /**
+     * The member bin size.
+     */
+    private final int mBinSize;
+
+    /**
+     * Bins per chromosome id.
+     */
+    private final Bins[] mBins;
+
+    /**
+     * Instantiates a new level.
+     *
+     * @param binSize the bin size
+     * @param chrs    the chrs
+     */
+    public Level(int binSize, int chrs) {
+      mBinSize = binSize;
+      mBins = new Bins[chrs];
+    }
+  }
+
+  /**
+   * The summary of a region. Bin i covers bases
+   * {@code getStart() + i * getBinSize()} to
+   * {@code getStart() + (i + 1) * getBinSize() - 1}. Bins with no coverage
+   * have a coverage of 0 and NaN min, max and mean.
+   */
+  public static class Summary {
+
+    /**
+     * The member start.
+     */
+    private final int mStart;
+
+    /**
+     * The member bin size.
+     */
+    private final int mBinSize;
+
+    /**
+     * The member min.
+     */
+    private final float[] mMin;
+
+    /**
+     * The member max.
+     */
+    private final float[] mMax;
+
+    /**
+     * The member mean.
+     */
+    private final float[] mMean;
+
+    /**
+     * The member coverage.
+     */
+    private final float[] mCoverage;
+
+    /**
+     * Instantiates a new summary.
+     *
+     * @param start   the start
+     * @param binSize the bin size
+     * @param bins    the bins
+     * @param first   the first bin to copy.
+     * @param n       the number of bins to copy.
+     */
+    private Summary(int start, int binSize, Bins bins, int first, int n) {
+      mStart = start;
+      mBinSize = binSize;
+      mMin = new float[n];
+      mMax = new float[n];
+      mMean = new float[n];
+      mCoverage = new float[n];
+
+      for (int i = 0; i < n; ++i) {
+        int b = first + i;
+
+        if (b < bins.size() && bins.mCovered[b] > 0) {
+          mMin[i] = bins.mMin[b];
+          mMax[i] = bins.mMax[b];
+          mMean[i] = (float) (bins.mSum[b] / bins.mCovered[b]);
+          mCoverage[i] = (float) bins.mCovered[b] / binSize;
+        } else {
+          mMin[i] = Float.NaN;
+          mMax[i] = Float.NaN;
+          mMean[i] = Float.NaN;
+        }
+      }
+    }
+
+    /**
+     * Gets the start of the first bin.
+     *
+     * @return the start
+     */
+    public int getStart() {
+      return mStart;
+    }
+
+    /**
+     * Gets the bin size.
+     *
+     * @return the bin size
+     */
+    public int getBinSize() {
+      return mBinSize;
+    }
+
+    /**
+     * Size.
+     *
+     * @return the int
+     */
+    public int size() {
+      return mMin.length;
+    }
+
+    /**
+     * Gets the min.
+     *
+     * @param bin the bin
+     * @return the min
+     */
+    public float getMin(int bin) {
+      return mMin[bin];
+    }
+
+    /**
+     * Gets the max.
+     *
+     * @param bin the bin
+     * @return the max
+     */
+    public float getMax(int bin) {
+      return mMax[bin];
+    }
+
+    /**
+     * Gets the mean.
+     *
+     * @param bin the bin
+     * @return the mean
+     */
+    public float getMean(int bin) {
+      return mMean[bin];
+    }
+
+    /**
+     * Gets the fraction of the bin covered by intervals.
+     *
+     * @param bin the bin
+     * @return the coverage
+     */
+    public float getCoverage(int bin) {
+      return mCoverage[bin];
+    }
+  }
+
+  /**
+   * Instantiates a new track pyramid.
+   *
+   * @param store the store
+   */
+  public TrackPyramid(TrackStore store) {
+    mStore = store;
+
+    int n = store.size();
+
+    if (n == 0) {
+      return;
+    }
+
+    int chrs = store.getChrs().size();
+
+    int[] chrEnds = new int[chrs];
+    long span = 0;
+    long length = 0;
+
+    for (int i = 0; i < n; ++i) {
+      int id = store.getChrId(i);
+
+      chrEnds[id] = Math.max(chrEnds[id], store.getEnd(i));
+
+      length += store.getEnd(i) - store.getStart(i) + 1;
+    }
+
+    for (int end : chrEnds) {
+      span += end;
+    }
+
+    // Like bigWig, start at four times the mean interval length but never
+    // create more bins than there are intervals so that the pyramid is no
+    // larger than the store itself.
+    long binSize = Math.max(ZOOM_FACTOR * length / n, span / n);
+    binSize = Math.max(1, Long.highestOneBit(Math.max(1, binSize - 1)) << 1);
+
+    Level level = new Level((int) binSize, chrs);
+
+    for (int id = 0; id < chrs; ++id) {
+      level.mBins[id] = new Bins(chrEnds[id] / level.mBinSize + 1);
+    }
+
+    for (int i = 0; i < n; ++i) {
+      addRow(level.mBins[store.getChrId(i)], level.mBinSize, i, 0, Integer.MAX_VALUE);
+    }
+
+    mLevels.add(level);
+
+    // Build coarser levels from finer ones until a whole chromosome fits in
+    // a handful of bins
+    while (maxBins(level) > ZOOM_FACTOR && (long) level.mBinSize * ZOOM_FACTOR <= Integer.MAX_VALUE) {
+      Level next = new Level(level.mBinSize * ZOOM_FACTOR, chrs);
+
+      for (int id = 0; id < chrs; ++id) {
+        Bins bins = level.mBins[id];
+        Bins nextBins = new Bins(bins.size() / ZOOM_FACTOR + 1);
+
+        for (int b = 0; b < bins.size(); ++b) {
+          nextBins.merge(b / ZOOM_FACTOR, bins, b);
+        }
+
+        next.mBins[id] = nextBins;
+      }
+
+      mLevels.add(next);
+
+      level = next;
+    }
+  }
+
+  /**
+   * Add a row to a set of bins, splitting it across every bin it spans.
+   *
+   * @param bins     the bins
+   * @param binSize  the bin size
+   * @param row      the row
+   * @param firstBin the bin stored at index 0 of the bins. Bins before this
+   *                 are ignored.
+   * @param maxBin   bins beyond this are ignored.
+   */
+  private void addRow(Bins bins, int binSize, int row, int firstBin, int maxBin) {
+    int start = mStore.getStart(row);
+    int end = mStore.getEnd(row);
+    float value = mStore.hasValues() ? mStore.getValue(row) : 1;
+
+    int b1 = Math.max(start / binSize, firstBin);
+    int b2 = Math.min(end / binSize, maxBin);
+
+    for (int b = b1; b <= b2; ++b) {
+      int binStart = b * binSize;
+      int binEnd = binStart + binSize - 1;
+
+      bins.add(b - firstBin, value, Math.min(end, binEnd) - Math.max(start, binStart) + 1);
+    }
+  }
+
+  /**
+   * Max bins.
+   *
+   * @param level the level
+   * @return the int
+   */
+  private static int maxBins(Level level) {
+    int ret = 0;
+
+    for (Bins bins : level.mBins) {
+      ret = Math.max(ret, bins.size());
+    }
+
+    return ret;
+  }
+
+  /**
+   * Gets the bin sizes of each level, finest first.
+   *
+   * @return the bin sizes
+   */
+  public int[] getBinSizes() {
+    int[] ret = new int[mLevels.size()];
+
+    for (int i = 0; i < ret.length; ++i) {
+      ret[i] = mLevels.get(i).mBinSize;
+    }
+
+    return ret;
+  }
+
+  /**
+   * Summarize a region for display across a given number of pixels.
+   *
+   * @param region the region
+   * @param pixels the pixels
+   * @return the summary
+   */
+  public Summary query(GenomicRegion region, int pixels) {
+    return query(region.getChr().toString(), region.getStart(), region.getEnd(), pixels);
+  }
+
+  /**
+   * Summarize a region for display across a given number of pixels. The
+   * coarsest level with a bin size no larger than the bases per pixel is
+   * used. If the region is zoomed in beyond the finest level, the summary is
+   * computed from the overlapping rows using the interval index.
+   *
+   * @param chr    the chr
+   * @param start  the start
+   * @param end    the end
+   * @param pixels the pixels
+   * @return the summary
+   */
+  public Summary query(String chr, int start, int end, int pixels) {
+    int basesPerPixel = Math.max(1, (end - start + 1) / Math.max(1, pixels));
+
+    Level level = null;
+
+    for (Level l : mLevels) {
+      if (l.mBinSize <= basesPerPixel) {
+        level = l;
+      } else {
+        break;
+      }
+    }
+
+    int id = mStore.getChrId(chr);
+
+    if (level != null) {
+      int b1 = start / level.mBinSize;
+      int b2 = end / level.mBinSize;
+
+      Bins bins = id != -1 ? level.mBins[id] : new Bins(0);
+
+      return new Summary(b1 * level.mBinSize, level.mBinSize, bins, b1, b2 - b1 + 1);
+    }
+
+    // Zoomed in further than the finest level so summarize the raw rows.
+    // Only the bins of the region are allocated, indexed from b1, since the
+    // region can be far along a chromosome
+    int b1 = start / basesPerPixel;
+    int b2 = end / basesPerPixel;
+
+    Bins bins = new Bins(b2 - b1 + 1);
+
+    if (id != -1) {
+      for (int row : mStore.getIndex().overlap(chr, start, end)) {
+        addRow(bins, basesPerPixel, row, b1, b2);
+      }
+    }
+
+    return new Summary(b1 * basesPerPixel, basesPerPixel, bins, 0, bins.size());
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.util.Arrays;
+
+/**
+ * Sorts row orders by primitive keys without boxing. Sorts are stable LSD
+ * radix sorts over 16 bit digits so they run in linear time, which matters
+ * when tracks have tens of millions of rows.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class TrackSort {
+
+  /**
+   * Number of bits sorted per pass.
+   */
+  private static final int BITS = 16;
+
+  /**
+   * The number of buckets per pass.
+   */
+  private static final int BUCKETS = 1 << BITS;
+
+  /**
+   * The mask for one digit.
+   */
+  private static final int MASK = BUCKETS - 1;
+
+  /**
+   * Instantiates a new track sort.
+   */
+  private TrackSort() {
+    // Do nothing
+  }
+
+  /**
+   * Returns the identity order 0, 1, ..., n - 1.
+   *
+   * @param n the n
+   * @return the order
+   */
+  public static int[] identity(int n) {
+    int[] order = new int[n];
+
+    for (int i = 0; i < n; ++i) {
+      order[i] = i;
+    }
+
+    return order;
+  }
+
+  /**
+   * Stable sort of a row order so that {@code keys[order[i]]} is ascending.
+   * The order array is sorted in place and returned.
+   *
+   * @param keys  the keys indexed by row.
+   * @param order the row order to sort.
+   * @return the sorted order
+   */
+  public static int[] sort(int[] keys, int[] order) {
+    int n = order.length;
+
+    int[] tmp = new int[n];
+    int[] counts = new int[BUCKETS + 1];
+
+    int[] src = order;
+    int[] dest = tmp;
+
+    for (int shift = 0; shift < Integer.SIZE; shift += BITS) {
+      Arrays.fill(counts, 0);
+
+      for (int i = 0; i < n; ++i) {
+        ++counts[digit(keys[src[i]], shift) + 1];
+      }
+
+      for (int i = 0; i < BUCKETS; ++i) {
+        counts[i + 1] += counts[i];
+      }
+
+      for (int i = 0; i < n; ++i) {
+        int row = src[i];
+
+        dest[counts[digit(keys[row], shift)]++] = row;
+      }
+
+      int[] t = src;
+      src = dest;
+      dest = t;
+    }
+
+    // An even number of passes means src is the original array again
+
+    return src;
+  }
+
+  /**
+   * Stable sort of a row order by float keys.
+   *
+   * @param keys  the keys
+   * @param order the order
+   * @return the sorted order
+   */
+  public static int[] sort(float[] keys, int[] order) {
+    int[] k = new int[keys.length];
+
+    for (int i = 0; i < keys.length; ++i) {
+      k[i] = sortable(keys[i]);
+    }
+
+    return sort(k, order);
+  }
+
+  /**
+   * Reverse an order in place so that it becomes descending.
+   *
+   * @param order the order
+   * @return the order
+   */
+  public static int[] reverse(int[] order) {
+    for (int i = 0, j = order.length - 1; i < j; ++i, --j) {
+      int t = order[i];
+      order[i] = order[j];
+      order[j] = t;
+    }
+
+    return order;
+  }
+
+  /**
+   * Maps a float to an int whose signed ordering matches the float ordering.
+   *
+   * @param v the v
+   * @return the int
+   */
+  public static int sortable(float v) {
+    int bits = Float.floatToIntBits(v);
+
+    return bits < 0 ? bits ^ Integer.MAX_VALUE : bits;
+  }
+
+  /**
+   * Extract a digit of a signed key such that negative keys sort first.
+   *
+   * @param key   the key
+   * @param shift the shift
+   * @return the digit
+   */
+  private static int digit(int key, int shift) {
+    return ((key ^ Integer.MIN_VALUE) >>> shift) & MASK;
+  }
+}
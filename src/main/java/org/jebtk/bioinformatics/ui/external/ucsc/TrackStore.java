@@ -0,0 +1,846 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jebtk.bioinformatics.ext.ucsc.BedElement;
+import org.jebtk.bioinformatics.ext.ucsc.BedGraphElement;
+import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
+import org.jebtk.bioinformatics.genomic.GenomicElement;
+
+/**
+ * Columnar, primitive backed storage for the intervals of a BedGraph or Bed
+ * track. Rather than one object per interval, chromosomes are stored as ids
+ * into a dictionary and starts, ends and values as primitive columns. Names
+ * (Bed only) are stored as a single UTF-8 blob with an offset column. Columns
+ * are NIO buffers so they may live on the heap, off heap, or in a memory
+ * mapped file. Rows are always sorted by chromosome and then start, and if
+ * that differs from the order of the source file a file order column maps
+ * each file position to its row so that the original order can be shown. A
+ * store backed by a mapped file keeps the mapping alive until the store and
+ * every view of its columns have been garbage collected.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class TrackStore {
+
+  /**
+   * The member name.
+   */
+  private final String mName;
+
+  /**
+   * The chromosome dictionary.
+   */
+  private final List<String> mChrs;
+
+  /**
+   * The member chr map.
+   */
+  private final Map<String, Integer> mChrMap = new HashMap<String, Integer>();
+
+  /**
+   * The member size.
+   */
+  private final int mSize;
+
+  /**
+   * The member chr ids.
+   */
+  private final IntBuffer mChrIds;
+
+  /**
+   * The member starts.
+   */
+  private final IntBuffer mStarts;
+
+  /**
+   * The member ends.
+   */
+  private final IntBuffer mEnds;
+
+  /**
+   * The member values or null if the track has no values.
+   */
+  private final FloatBuffer mValues;
+
+  /**
+   * Offsets of each name in the names blob (size + 1 entries) or null if the
+   * track has no names.
+   */
+  private final IntBuffer mNameOffsets;
+
+  /**
+   * The member names.
+   */
+  private final ByteBuffer mNames;
+
+  /**
+   * The row of each position in the source file, or null if the rows are in
+   * file order.
+   */
+  private final IntBuffer mFileRows;
+
+  /**
+   * The member index.
+   */
+  private TrackIndex mIndex = null;
+
+  /**
+   * The member pyramid.
+   */
+  private TrackPyramid mPyramid = null;
+
+  /**
+   * The member name index.
+   */
+  private TrackNameIndex mNameIndex = null;
+
+  /**
+   * Accumulates rows before they are sorted and packed into columns.
+   */
+  public static class Builder {
+
+    /**
+     * The member name.
+     */
+    private final String mName;
+
+    /**
+     * The member chrs.
+     */
+    private final List<String> mChrs = new ArrayList<String>();
+
+    /**
+     * The member chr map.
+     */
+    private final Map<String, Integer> mChrMap = new HashMap<String, Integer>();
+
+    /**
+     * The member size.
+     */
+    private int mSize = 0;
+
+    /**
+     * The member chr ids.
+     */
+    private int[] mChrIds = new int[1024];
+
+    /**
+     * The member starts.
+     */
+    private int[] mStarts = new int[1024];
+
+    /**
+     * The member ends.
+     */
+    private int[] mEnds = new int[1024];
+
+    /**
+     * The member values.
+     */
+    private float[] mValues = null;
+
+    /**
+     * The member names.
+     */
+    private List<String> mNames = null;
+
+    /**
+     * Instantiates a new builder.
+     *
+     * @param name the name
+     */
+    public Builder(String name) {
+      mName = name;
+    }
+
+    /**
+     * Adds an interval.
+     *
+     * @param chr   the chr
+     * @param start the start
+     * @param end   the end
+     * @return the builder
+     */
+    public Builder add(String chr, int start, int end) {
+      append(chr, start, end);
+
+      if (mNames != null) {
+        mNames.add(null);
+      }
+
+      return this;
+    }
+
+    /**
+     * Adds an interval with a value.
+     *
+     * @param chr   the chr
+     * @param start the start
+     * @param end   the end
+     * @param value the value
+     * @return the builder
+     */
+    public Builder add(String chr, int start, int end, float value) {
+      int row = append(chr, start, end);
+
+      if (mValues == null) {
+        mValues = new float[mStarts.length];
+      }
+
+      mValues[row] = value;
+
+      if (mNames != null) {
+        mNames.add(null);
+      }
+
+      return this;
+    }
+
+    /**
+     * Adds a named interval.
+     *
+     * @param chr   the chr
+     * @param start the start
+     * @param end   the end
+     * @param name  the name
+     * @return the builder
+     */
+    public Builder add(String chr, int start, int end, String name) {
+      if (mNames == null) {
+        mNames = new ArrayList<String>(mStarts.length);
+
+        // Rows already added have no name
+        for (int i = 0; i < mSize; ++i) {
+          mNames.add(null);
+        }
+      }
+
+      append(chr, start, end);
+
+      mNames.add(name);
+
+      return this;
+    }
+
+    /**
+     * Append a row.
+     *
+     * @param chr   the chr
+     * @param start the start
+     * @param end   the end
+     * @return the index of the new row.
+     */
+    private int append(String chr, int start, int end) {
+      ensureCapacity();
+
+      mChrIds[mSize] = chrId(chr);
+      mStarts[mSize] = start;
+      mEnds[mSize] = end;
+
+      return mSize++;
+    }
+
+    /**
+     * Chr id.
+     *
+     * @param chr the chr
+     * @return the int
+     */
+    private int chrId(String chr) {
+      Integer id = mChrMap.get(chr);
+
+      if (id == null) {
+        id = mChrs.size();
+        mChrs.add(chr);
+        mChrMap.put(chr, id);
+      }
+
+      return id;
+    }
+
+    /**
+     * Ensure capacity.
+     */
+    private void ensureCapacity() {
+      if (mSize < mStarts.length) {
+        return;
+      }
+
+      int n = mStarts.length * 2;
+
+      mChrIds = Arrays.copyOf(mChrIds, n);
+      mStarts = Arrays.copyOf(mStarts, n);
+      mEnds = Arrays.copyOf(mEnds, n);
+
+      if (mValues != null) {
+        mValues = Arrays.copyOf(mValues, n);
+      }
+    }
+
+    /**
+     * Sort the rows and pack them into columns.
+     *
+     * @param offHeap true if the columns should be allocated outside the
+     *                Java heap.
+     * @return the track store
+     */
+    public TrackStore build(boolean offHeap) {
+      int[] order = null;
+
+      for (int i = 1; i < mSize; ++i) {
+        if (mChrIds[i] < mChrIds[i - 1] || (mChrIds[i] == mChrIds[i - 1] && mStarts[i] < mStarts[i - 1])) {
+          // Stable sort by start and then by chromosome gives rows ordered by
+          // chromosome and then start.
+          order = TrackSort.identity(mSize);
+          order = TrackSort.sort(Arrays.copyOf(mStarts, mSize), order);
+          order = TrackSort.sort(Arrays.copyOf(mChrIds, mSize), order);
+          break;
+        }
+      }
+
+      IntBuffer chrIds = allocateInts(mSize, offHeap);
+      IntBuffer starts = allocateInts(mSize, offHeap);
+      IntBuffer ends = allocateInts(mSize, offHeap);
+      FloatBuffer values = mValues != null ? allocateFloats(mSize, offHeap) : null;
+
+      byte[][] names = mNames != null ? new byte[mSize][] : null;
+      int nameBytes = 0;
+
+      for (int i = 0; i < mSize; ++i) {
+        int row = order != null ? order[i] : i;
+
+        chrIds.put(i, mChrIds[row]);
+        starts.put(i, mStarts[row]);
+        ends.put(i, mEnds[row]);
+
+        if (values != null) {
+          values.put(i, mValues[row]);
+        }
+
+        if (names != null) {
+          String name = mNames.get(row);
+
+          names[i] = name != null ? name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+
+          nameBytes += names[i].length;
+        }
+      }
+
+      IntBuffer fileRows = null;
+
+      if (order != null) {
+        // Invert the sort so each file position can find its row
+        fileRows = allocateInts(mSize, offHeap);
+
+        for (int i = 0; i < mSize; ++i) {
+          fileRows.put(order[i], i);
+        }
+      }
+
+      IntBuffer nameOffsets = null;
+      ByteBuffer nameBlob = null;
+
+      if (names != null) {
+        nameOffsets = allocateInts(mSize + 1, offHeap);
+        nameBlob = allocate(nameBytes, offHeap);
+
+        int offset = 0;
+
+        for (int i = 0; i < mSize; ++i) {
+          nameOffsets.put(i, offset);
+          nameBlob.put(names[i]);
+          offset += names[i].length;
+        }
+
+        nameOffsets.put(mSize, offset);
+        nameBlob.flip();
+      }
+
+      return new TrackStore(mName, mChrs, mSize, chrIds, starts, ends, values, nameOffsets, nameBlob, fileRows);
+    }
+  }
+
+  /**
+   * Instantiates a new track store from columns. The columns must already be
+   * sorted by chromosome and start.
+   *
+   * @param name        the name
+   * @param chrs        the chromosome dictionary
+   * @param size        the number of rows
+   * @param chrIds      the chr ids
+   * @param starts      the starts
+   * @param ends        the ends
+   * @param values      the values or null.
+   * @param nameOffsets the name offsets or null.
+   * @param names       the names or null.
+   */
+  public TrackStore(String name, List<String> chrs, int size, IntBuffer chrIds, IntBuffer starts, IntBuffer ends,
+      FloatBuffer values, IntBuffer nameOffsets, ByteBuffer names) {
+    this(name, chrs, size, chrIds, starts, ends, values, nameOffsets, names, null);
+  }
+
+  /**
+   * Instantiates a new track store from columns. The columns must already be
+   * sorted by chromosome and start.
+   *
+   * @param name        the name
+   * @param chrs        the chromosome dictionary
+   * @param size        the number of rows
+   * @param chrIds      the chr ids
+   * @param starts      the starts
+   * @param ends        the ends
+   * @param values      the values or null.
+   * @param nameOffsets the name offsets or null.
+   * @param names       the names or null.
+   * @param fileRows    the row of each file position or null if the rows are
+   *                    in file order.
+   */
+  public TrackStore(String name, List<String> chrs, int size, IntBuffer chrIds, IntBuffer starts, IntBuffer ends,
+      FloatBuffer values, IntBuffer nameOffsets, ByteBuffer names, IntBuffer fileRows) {
+    mName = name;
+    mChrs = Collections.unmodifiableList(new ArrayList<String>(chrs));
+    mSize = size;
+    mChrIds = chrIds;
+    mStarts = starts;
+    mEnds = ends;
+    mValues = values;
+    mNameOffsets = nameOffsets;
+    mNames = names;
+    mFileRows = fileRows;
+
+    for (int i = 0; i < mChrs.size(); ++i) {
+      mChrMap.put(mChrs.get(i), i);
+    }
+  }
+
+  /**
+   * Gets the name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return mName;
+  }
+
+  /**
+   * Returns the number of intervals.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Gets the chromosome dictionary.
+   *
+   * @return the chrs
+   */
+  public List<String> getChrs() {
+    return mChrs;
+  }
+
+  /**
+   * Gets the id of a chromosome in the dictionary.
+   *
+   * @param chr the chr
+   * @return the chr id or -1 if the track has no intervals on the chromosome.
+   */
+  public int getChrId(String chr) {
+    Integer id = mChrMap.get(chr);
+
+    return id != null ? id : -1;
+  }
+
+  /**
+   * Gets the chr id of a row.
+   *
+   * @param row the row
+   * @return the chr id
+   */
+  public int getChrId(int row) {
+    return mChrIds.get(row);
+  }
+
+  /**
+   * Gets the chromosome name of a row.
+   *
+   * @param row the row
+   * @return the chr
+   */
+  public String getChr(int row) {
+    return mChrs.get(mChrIds.get(row));
+  }
+
+  /**
+   * Gets the start.
+   *
+   * @param row the row
+   * @return the start
+   */
+  public int getStart(int row) {
+    return mStarts.get(row);
+  }
+
+  /**
+   * Gets the end.
+   *
+   * @param row the row
+   * @return the end
+   */
+  public int getEnd(int row) {
+    return mEnds.get(row);
+  }
+
+  /**
+   * Checks for values.
+   *
+   * @return true, if successful
+   */
+  public boolean hasValues() {
+    return mValues != null;
+  }
+
+  /**
+   * Gets the value.
+   *
+   * @param row the row
+   * @return the value or 0 if the track has no values.
+   */
+  public float getValue(int row) {
+    return mValues != null ? mValues.get(row) : 0;
+  }
+
+  /**
+   * Checks for names.
+   *
+   * @return true, if successful
+   */
+  public boolean hasNames() {
+    return mNames != null;
+  }
+
+  /**
+   * Gets the name of a row. The string is decoded on each call.
+   *
+   * @param row the row
+   * @return the name or the empty string if the track has no names.
+   */
+  public String getName(int row) {
+    if (mNames == null) {
+      return "";
+    }
+
+    int offset = mNameOffsets.get(row);
+    int l = mNameOffsets.get(row + 1) - offset;
+
+    byte[] bytes = new byte[l];
+
+    for (int i = 0; i < l; ++i) {
+      bytes[i] = mNames.get(offset + i);
+    }
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the row holding the interval at a position in the source file.
+   *
+   * @param i the file position
+   * @return the row
+   */
+  public int getFileRow(int i) {
+    return mFileRows != null ? mFileRows.get(i) : i;
+  }
+
+  /**
+   * Gets the rows in source file order.
+   *
+   * @return the rows indexed by file position.
+   */
+  public int[] getFileOrder() {
+    if (mFileRows == null) {
+      return TrackSort.identity(mSize);
+    }
+
+    int[] ret = new int[mSize];
+
+    mFileRows.duplicate().get(ret);
+
+    return ret;
+  }
+
+  /**
+   * Gets the location of a row formatted as chr:start-end.
+   *
+   * @param row the row
+   * @return the location
+   */
+  public String getLocation(int row) {
+    return new StringBuilder(getChr(row)).append(':').append(getStart(row)).append('-').append(getEnd(row))
+        .toString();
+  }
+
+  /**
+   * Gets the locations of every row in file order, for example to export the
+   * regions of a track.
+   *
+   * @return the locations
+   */
+  public List<String> getLocations() {
+    List<String> ret = new ArrayList<String>(mSize);
+
+    for (int i = 0; i < mSize; ++i) {
+      ret.add(getLocation(getFileRow(i)));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Gets the interval index of the store, creating it if necessary.
+   *
+   * @return the index
+   */
+  public synchronized TrackIndex getIndex() {
+    if (mIndex == null) {
+      mIndex = new TrackIndex(this);
+    }
+
+    return mIndex;
+  }
+
+  /**
+   * Gets the zoom levels of the store, creating them if necessary.
+   *
+   * @return the pyramid
+   */
+  public synchronized TrackPyramid getPyramid() {
+    if (mPyramid == null) {
+      mPyramid = new TrackPyramid(this);
+    }
+
+    return mPyramid;
+  }
+
+  /**
+   * Gets the name search index of the store, creating it if necessary.
+   *
+   * @return the name index
+   */
+  public synchronized TrackNameIndex getNameIndex() {
+    if (mNameIndex == null) {
+      mNameIndex = new TrackNameIndex(this);
+    }
+
+    return mNameIndex;
+  }
+
+  /**
+   * Gets the chr ids column.
+   *
+   * @return the chr ids
+   */
+  public IntBuffer getChrIds() {
+    return mChrIds.duplicate();
+  }
+
+  /**
+   * Gets the starts column.
+   *
+   * @return the starts
+   */
+  public IntBuffer getStarts() {
+    return mStarts.duplicate();
+  }
+
+  /**
+   * Gets the ends column.
+   *
+   * @return the ends
+   */
+  public IntBuffer getEnds() {
+    return mEnds.duplicate();
+  }
+
+  /**
+   * Gets the values column.
+   *
+   * @return the values or null.
+   */
+  public FloatBuffer getValues() {
+    return mValues != null ? mValues.duplicate() : null;
+  }
+
+  /**
+   * Gets the name offsets column.
+   *
+   * @return the name offsets or null.
+   */
+  public IntBuffer getNameOffsets() {
+    return mNameOffsets != null ? mNameOffsets.duplicate() : null;
+  }
+
+  /**
+   * Gets the names blob.
+   *
+   * @return the names or null.
+   */
+  public ByteBuffer getNames() {
+    return mNames != null ? mNames.duplicate() : null;
+  }
+
+  /**
+   * Gets the file order column.
+   *
+   * @return the row of each file position or null if the rows are in file
+   *         order.
+   */
+  public IntBuffer getFileRows() {
+    return mFileRows != null ? mFileRows.duplicate() : null;
+  }
+
+  /**
+   * Append the rows of the store to a BedGraph (if it has values) or Bed
+   * file, in the order of the source file, for example after the track line
+   * has been written by UCSCTrack.write. Starts are 1-based, as with
+   * GenomicRegion, so are converted back to the 0-based BED convention.
+   *
+   * @param file the file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void append(Path file) throws IOException {
+    BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+
+    try {
+      for (int i = 0; i < mSize; ++i) {
+        int row = getFileRow(i);
+
+        writer.write(getChr(row));
+        writer.write('\t');
+        writer.write(Integer.toString(getStart(row) - 1));
+        writer.write('\t');
+        writer.write(Integer.toString(getEnd(row)));
+
+        if (hasValues()) {
+          writer.write('\t');
+          writer.write(Float.toString(getValue(row)));
+        } else if (hasNames()) {
+          writer.write('\t');
+          writer.write(getName(row));
+        }
+
+        writer.newLine();
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Create a store from the elements of a track.
+   *
+   * @param track   the track
+   * @param offHeap true if the columns should be allocated off heap.
+   * @return the track store
+   */
+  public static TrackStore create(UCSCTrack track, boolean offHeap) {
+    Builder builder = new Builder(track.getName());
+
+    for (GenomicElement e : track.getElements()) {
+      String chr = e.getChr().toString();
+
+      if (e instanceof BedGraphElement) {
+        double v = ((BedGraphElement) e).getValue();
+
+        builder.add(chr, e.getStart(), e.getEnd(), (float) v);
+      } else if (e instanceof BedElement) {
+        builder.add(chr, e.getStart(), e.getEnd(), ((BedElement) e).getName());
+      } else {
+        builder.add(chr, e.getStart(), e.getEnd());
+      }
+    }
+
+    return builder.build(offHeap);
+  }
+
+  /**
+   * Allocate.
+   *
+   * @param bytes   the bytes
+   * @param offHeap the off heap
+   * @return the byte buffer
+   */
+  private static ByteBuffer allocate(int bytes, boolean offHeap) {
+    ByteBuffer buffer = offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+
+    return buffer.order(ByteOrder.nativeOrder());
+  }
+
+  /**
+   * Allocate ints.
+   *
+   * @param n       the n
+   * @param offHeap the off heap
+   * @return the int buffer
+   */
+  private static IntBuffer allocateInts(int n, boolean offHeap) {
+    return offHeap ? allocate(n * 4, true).asIntBuffer() : IntBuffer.allocate(n);
+  }
+
+  /**
+   * Allocate floats.
+   *
+   * @param n       the n
+   * @param offHeap the off heap
+   * @return the float buffer
+   */
+  private static FloatBuffer allocateFloats(int n, boolean offHeap) {
+    return offHeap ? allocate(n * 4, true).asFloatBuffer() : FloatBuffer.allocate(n);
+  }
+}
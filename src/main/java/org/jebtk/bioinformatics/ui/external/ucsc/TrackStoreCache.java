@@ -0,0 +1,800 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.awt.Color;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jebtk.bioinformatics.ext.ucsc.Bed;
+import org.jebtk.bioinformatics.ext.ucsc.BedGraph;
+import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
+import org.jebtk.bioinformatics.genomic.GenomicType;
+
+/**
+ * Binary cache of the columnar stores of BedGraph and Bed files. The first
+ * time a file is loaded its stores are written to a cache file; subsequent
+ * loads memory map the cache and wrap the columns directly, so no text is
+ * parsed and no interval objects are created. The name, description, color
+ * and height of each track are stored with it so that a track loaded from
+ * the cache looks the same as the parsed one. A cache entry is keyed by the
+ * absolute path of the source file and is only used if the size and
+ * modification time recorded in it still match the source. Stores read from
+ * the cache share the mapping of their file. The mapping is never released
+ * explicitly, since a table or a prefetch may still be reading a store when
+ * its track is removed, so it lasts until the stores are garbage collected.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class TrackStoreCache {
+
+  /**
+   * The Class TrackStoreCacheLoader.
+   */
+  private static class TrackStoreCacheLoader {
+
+    /** The Constant INSTANCE. */
+    private static final TrackStoreCache INSTANCE = new TrackStoreCache();
+  }
+
+  /**
+   * Gets the single instance of TrackStoreCache.
+   *
+   * @return single instance of TrackStoreCache
+   */
+  public static TrackStoreCache getInstance() {
+    return TrackStoreCacheLoader.INSTANCE;
+  }
+
+  /**
+   * Identifies a cache file.
+   */
+  private static final int MAGIC = 0x4A544331; // JTC1
+
+  /**
+   * The Constant VERSION.
+   */
+  private static final int VERSION = 3;
+
+  /**
+   * The Constant FLAG_VALUES.
+   */
+  private static final int FLAG_VALUES = 1;
+
+  /**
+   * The Constant FLAG_NAMES.
+   */
+  private static final int FLAG_NAMES = 2;
+
+  /**
+   * The Constant FLAG_FILE_ORDER.
+   */
+  private static final int FLAG_FILE_ORDER = 4;
+
+  /**
+   * The Constant EXT.
+   */
+  private static final String EXT = ".jtc";
+
+  /**
+   * The member dir.
+   */
+  private Path mDir = Paths.get(System.getProperty("user.home"), ".jebtk", "cache", "tracks");
+
+  /**
+   * Instantiates a new track store cache.
+   */
+  private TrackStoreCache() {
+    // Do nothing
+  }
+
+  /**
+   * Sets the directory cache files are written to.
+   *
+   * @param dir the new dir
+   */
+  public synchronized void setDir(Path dir) {
+    mDir = dir;
+  }
+
+  /**
+   * Gets the dir.
+   *
+   * @return the dir
+   */
+  public synchronized Path getDir() {
+    return mDir;
+  }
+
+  /**
+   * Returns true if there is an up to date cache entry for a file.
+   *
+   * @param file the file
+   * @return true, if is cached
+   */
+  public boolean isCached(Path file) {
+    Path cacheFile = cacheFile(file);
+
+    if (!Files.exists(cacheFile) || !Files.exists(file)) {
+      return false;
+    }
+
+    // Only the header is needed so read it rather than mapping the file
+    try {
+      // Too large to map
+      if (Files.size(cacheFile) > Integer.MAX_VALUE) {
+        return false;
+      }
+
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile)));
+
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          return false;
+        }
+
+        if (in.readLong() != Files.size(file) || in.readLong() != Files.getLastModifiedTime(file).toMillis()) {
+          return false;
+        }
+
+        int l = in.readInt();
+
+        if (l < 0 || l > Files.size(cacheFile)) {
+          return false;
+        }
+
+        byte[] bytes = new byte[l];
+
+        in.readFully(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8).equals(file.toAbsolutePath().toString());
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Load the tracks in a BedGraph file, from the cache if possible. Tracks
+   * loaded from the cache are lightweight handles whose intervals are only
+   * available through {@link TrackStoreService}.
+   *
+   * @param file the file
+   * @return the tracks
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<BedGraph> bedGraphs(Path file) throws IOException {
+    List<BedGraph> ret = new ArrayList<BedGraph>();
+
+    List<Entry> entries = read(file);
+
+    if (entries != null) {
+      for (Entry entry : entries) {
+        BedGraph track = new BedGraph(entry.mName, entry.mDescription);
+
+        if (entry.mColor != null) {
+          track.setColor(entry.mColor);
+        }
+
+        track.setHeight(entry.mHeight);
+
+        TrackStoreService.getInstance().put(track, entry.mStore);
+
+        ret.add(track);
+      }
+    } else {
+      ret.addAll(BedGraph.parse(file));
+
+      write(file, ret);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Load the stores of a BedGraph file, from the cache if possible.
+   *
+   * @param file the file
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<TrackStore> bedGraphStores(Path file) throws IOException {
+    List<Entry> entries = read(file);
+
+    if (entries == null) {
+      return write(file, BedGraph.parse(file));
+    }
+
+    return stores(entries);
+  }
+
+  /**
+   * Load the stores of a Bed file, from the cache if possible.
+   *
+   * @param file the file
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<TrackStore> bedStores(Path file) throws IOException {
+    List<Entry> entries = read(file);
+
+    if (entries == null) {
+      return write(file, Bed.parseTracks(GenomicType.REGION, file));
+    }
+
+    return stores(entries);
+  }
+
+  /**
+   * Build the stores of a set of tracks and write them to the cache. The
+   * tracks keep their elements since callers may share them. Failing to write
+   * the cache is not fatal, the file will simply be parsed again next time.
+   *
+   * @param file   the source file
+   * @param tracks the tracks parsed from it.
+   * @return the stores of the tracks.
+   */
+  private List<TrackStore> write(Path file, List<? extends UCSCTrack> tracks) {
+    List<TrackStore> stores = new ArrayList<TrackStore>(tracks.size());
+
+    for (UCSCTrack track : tracks) {
+      stores.add(TrackStoreService.getInstance().getStore(track));
+    }
+
+    try {
+      write(file, tracks, stores, cacheFile(file));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    return stores;
+  }
+
+  /**
+   * Write.
+   *
+   * @param file      the file
+   * @param tracks    the tracks
+   * @param stores    the stores of the tracks
+   * @param cacheFile the cache file
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void write(Path file, List<? extends UCSCTrack> tracks, List<TrackStore> stores, Path cacheFile)
+      throws IOException {
+    Files.createDirectories(cacheFile.getParent());
+
+    // Write to a temporary file and then move it into place so that a
+    // reader never sees a partially written cache
+    Path tmp = Files.createTempFile(cacheFile.getParent(), "track", ".tmp");
+
+    try {
+      OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp));
+
+      try {
+        CountingOutput data = new CountingOutput(out);
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(Files.size(file));
+        data.writeLong(Files.getLastModifiedTime(file).toMillis());
+        writeString(data, file.toAbsolutePath().toString());
+        data.writeInt(stores.size());
+
+        for (int i = 0; i < stores.size(); ++i) {
+          writeHeader(data, tracks.get(i));
+          writeStore(data, stores.get(i));
+        }
+
+        // The file could never be mapped so do not keep it
+        if (data.getCount() > Integer.MAX_VALUE) {
+          return;
+        }
+      } finally {
+        out.close();
+      }
+
+      Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Write the name, description, color and height of a track.
+   *
+   * @param data  the data
+   * @param track the track
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeHeader(DataOutputStream data, UCSCTrack track) throws IOException {
+    writeString(data, track.getName());
+    writeString(data, track.getDescription() != null ? track.getDescription() : track.getName());
+
+    Color color = track.getColor();
+
+    data.writeBoolean(color != null);
+    data.writeInt(color != null ? color.getRGB() : 0);
+    data.writeInt(track.getHeight());
+  }
+
+  /**
+   * Write store.
+   *
+   * @param data  the data
+   * @param store the store
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeStore(CountingOutput data, TrackStore store) throws IOException {
+    int n = store.size();
+
+    writeString(data, store.getName());
+
+    data.writeInt(store.getChrs().size());
+
+    for (String chr : store.getChrs()) {
+      writeString(data, chr);
+    }
+
+    IntBuffer fileRows = store.getFileRows();
+
+    int flags = (store.hasValues() ? FLAG_VALUES : 0) | (store.hasNames() ? FLAG_NAMES : 0)
+        | (fileRows != null ? FLAG_FILE_ORDER : 0);
+
+    ByteBuffer names = store.getNames();
+
+    data.writeInt(n);
+    data.writeInt(flags);
+    data.writeInt(names != null ? names.remaining() : 0);
+
+    // Align the columns so they can be viewed as int buffers efficiently
+    data.align();
+
+    writeInts(data, store.getChrIds(), n);
+    writeInts(data, store.getStarts(), n);
+    writeInts(data, store.getEnds(), n);
+
+    if (store.hasValues()) {
+      FloatBuffer values = store.getValues();
+
+      for (int i = 0; i < n; ++i) {
+        data.writeFloat(values.get(i));
+      }
+    }
+
+    if (fileRows != null) {
+      writeInts(data, fileRows, n);
+    }
+
+    if (store.hasNames()) {
+      writeInts(data, store.getNameOffsets(), n + 1);
+
+      while (names.hasRemaining()) {
+        data.writeByte(names.get());
+      }
+
+      data.align();
+    }
+  }
+
+  /**
+   * Write ints.
+   *
+   * @param data   the data
+   * @param buffer the buffer
+   * @param n      the n
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeInts(DataOutputStream data, IntBuffer buffer, int n) throws IOException {
+    for (int i = 0; i < n; ++i) {
+      data.writeInt(buffer.get(i));
+    }
+  }
+
+  /**
+   * Write string.
+   *
+   * @param data the data
+   * @param s    the s
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static void writeString(DataOutputStream data, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  }
+
+  /**
+   * Read the tracks of a file from the cache.
+   *
+   * @param file the file
+   * @return the tracks or null if there is no up to date cache entry.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private List<Entry> read(Path file) throws IOException {
+    ByteBuffer buffer = map(file);
+
+    if (buffer == null) {
+      return null;
+    }
+
+    int n = buffer.getInt();
+
+    List<Entry> ret = new ArrayList<Entry>(n);
+
+    for (int i = 0; i < n; ++i) {
+      Entry entry = new Entry();
+
+      entry.mName = readString(buffer);
+      entry.mDescription = readString(buffer);
+
+      boolean hasColor = buffer.get() != 0;
+      int rgb = buffer.getInt();
+
+      entry.mColor = hasColor ? new Color(rgb, true) : null;
+      entry.mHeight = buffer.getInt();
+      entry.mStore = readStore(buffer);
+
+      ret.add(entry);
+    }
+
+    return ret;
+  }
+
+  /**
+   * The stores of a list of cache entries.
+   *
+   * @param entries the entries
+   * @return the list
+   */
+  private static List<TrackStore> stores(List<Entry> entries) {
+    List<TrackStore> ret = new ArrayList<TrackStore>(entries.size());
+
+    for (Entry entry : entries) {
+      ret.add(entry.mStore);
+    }
+
+    return ret;
+  }
+
+  /**
+   * Map the cache file of a file and validate its header.
+   *
+   * @param file the file
+   * @return the buffer positioned after the header or null if there is no
+   *         valid cache entry.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private ByteBuffer map(Path file) throws IOException {
+    Path cacheFile = cacheFile(file);
+
+    if (!Files.exists(cacheFile) || !Files.exists(file)) {
+      return null;
+    }
+
+    MappedByteBuffer buffer;
+
+    FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ);
+
+    try {
+      // A single buffer cannot map more than 2GB so such a file is treated
+      // as not cached and parsed instead
+      if (channel.size() > Integer.MAX_VALUE) {
+        return null;
+      }
+
+      // The mapping remains valid after the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      channel.close();
+    }
+
+    buffer.order(ByteOrder.BIG_ENDIAN);
+
+    if (buffer.remaining() < 24 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+      return null;
+    }
+
+    if (buffer.getLong() != Files.size(file)
+        || buffer.getLong() != Files.getLastModifiedTime(file).toMillis()
+        || !readString(buffer).equals(file.toAbsolutePath().toString())) {
+      return null;
+    }
+
+    return buffer;
+  }
+
+  /**
+   * Read store.
+   *
+   * @param buffer the buffer
+   * @return the track store
+   */
+  private static TrackStore readStore(ByteBuffer buffer) {
+    String name = readString(buffer);
+
+    int chrCount = buffer.getInt();
+
+    List<String> chrs = new ArrayList<String>(chrCount);
+
+    for (int i = 0; i < chrCount; ++i) {
+      chrs.add(readString(buffer));
+    }
+
+    int n = buffer.getInt();
+    int flags = buffer.getInt();
+    int nameBytes = buffer.getInt();
+
+    align(buffer);
+
+    IntBuffer chrIds = slice(buffer, n * 4).asIntBuffer();
+    IntBuffer starts = slice(buffer, n * 4).asIntBuffer();
+    IntBuffer ends = slice(buffer, n * 4).asIntBuffer();
+
+    FloatBuffer values = null;
+
+    if ((flags & FLAG_VALUES) != 0) {
+      values = slice(buffer, n * 4).asFloatBuffer();
+    }
+
+    IntBuffer fileRows = null;
+
+    if ((flags & FLAG_FILE_ORDER) != 0) {
+      fileRows = slice(buffer, n * 4).asIntBuffer();
+    }
+
+    IntBuffer nameOffsets = null;
+    ByteBuffer names = null;
+
+    if ((flags & FLAG_NAMES) != 0) {
+      nameOffsets = slice(buffer, (n + 1) * 4).asIntBuffer();
+      names = slice(buffer, nameBytes);
+
+      align(buffer);
+    }
+
+    return new TrackStore(name, chrs, n, chrIds, starts, ends, values, nameOffsets, names, fileRows);
+  }
+
+  /**
+   * Returns a view of the next bytes of a buffer and advances past them.
+   *
+   * @param buffer the buffer
+   * @param bytes  the bytes
+   * @return the byte buffer
+   */
+  private static ByteBuffer slice(ByteBuffer buffer, int bytes) {
+    ByteBuffer ret = buffer.slice();
+    ret.limit(bytes);
+    ret.order(buffer.order());
+
+    buffer.position(buffer.position() + bytes);
+
+    return ret;
+  }
+
+  /**
+   * Read string.
+   *
+   * @param buffer the buffer
+   * @return the string
+   */
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+
+    buffer.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Move a buffer to the next 8 byte boundary.
+   *
+   * @param buffer the buffer
+   */
+  private static void align(ByteBuffer buffer) {
+    buffer.position((buffer.position() + 7) & ~7);
+  }
+
+  /**
+   * The cache file for a source file.
+   *
+   * @param file the file
+   * @return the path
+   */
+  private Path cacheFile(Path file) {
+    return getDir().resolve(hash(file.toAbsolutePath().toString()) + EXT);
+  }
+
+  /**
+   * Hash.
+   *
+   * @param s the s
+   * @return the string
+   */
+  private static String hash(String s) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+
+      StringBuilder buffer = new StringBuilder();
+
+      for (byte b : digest) {
+        buffer.append(String.format("%02x", b));
+      }
+
+      return buffer.toString();
+    } catch (NoSuchAlgorithmException e) {
+      return Integer.toHexString(s.hashCode());
+    }
+  }
+
+  /**
+   * A track read from the cache.
+   */
+  private static class Entry {
+
+    /**
+     * The member name.
+     */
+    private String mName;
+
+    /**
+     * The member description.
+     */
+    private String mDescription;
+
+    /**
+     * The member color, or null if the track had none.
+     */
+    private Color mColor;
+
+    /**
+     * The member height.
+     */
+    private int mHeight;
+
+    /**
+     * The member store.
+     */
+    private TrackStore mStore;
+  }
+
+  /**
+   * Output stream that can pad to a byte boundary. The bytes written are
+   * counted as a long since {@link DataOutputStream#size()} stops at
+   * Integer.MAX_VALUE.
+   */
+  private static class CountingOutput extends DataOutputStream {
+
+    /**
+     * Instantiates a new counting output.
+     *
+     * @param out the out
+     */
+    public CountingOutput(OutputStream out) {
+      super(new ByteCounter(out));
+    }
+
+    /**
+     * Pad with zeros to the next 8 byte boundary.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void align() throws IOException {
+      while ((getCount() & 7) != 0) {
+        writeByte(0);
+      }
+    }
+
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return the count
+     */
+    public long getCount() {
+      return ((ByteCounter) out).getCount();
+    }
+  }
+
+  /**
+   * Counts the bytes written to a stream.
+   */
+  private static class ByteCounter extends FilterOutputStream {
+
+    /**
+     * The member count.
+     */
+    private long mCount = 0;
+
+    /**
+     * Instantiates a new byte counter.
+     *
+     * @param out the out
+     */
+    public ByteCounter(OutputStream out) {
+      super(out);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.FilterOutputStream#write(int)
+     */
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+
+      ++mCount;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.io.FilterOutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+
+      mCount += len;
+    }
+
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return the count
+     */
+    public long getCount() {
+      return mCount;
+    }
+  }
+}
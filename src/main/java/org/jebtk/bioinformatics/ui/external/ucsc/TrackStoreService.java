@@ -0,0 +1,366 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.external.ucsc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
+import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.genomic.GenomicRegionModel;
+import org.jebtk.bioinformatics.ui.RegionHistory;
+
+/**
+ * Keeps the columnar {@link TrackStore} for each loaded track so that table
+ * models, renderers and exports can read intervals without touching the
+ * track's element objects. Tracks loaded from the {@link TrackStoreCache}
+ * have no elements, so every consumer must read intervals from here. Stores
+ * are held weakly against their track so they are discarded, along with any
+ * file mapping, when the track is.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class TrackStoreService {
+
+  /**
+   * The Class TrackStoreServiceLoader.
+   */
+  private static class TrackStoreServiceLoader {
+
+    /** The Constant INSTANCE. */
+    private static final TrackStoreService INSTANCE = new TrackStoreService();
+  }
+
+  /**
+   * Gets the single instance of TrackStoreService.
+   *
+   * @return single instance of TrackStoreService
+   */
+  public static TrackStoreService getInstance() {
+    return TrackStoreServiceLoader.INSTANCE;
+  }
+
+  /**
+   * The member stores.
+   */
+  private final Map<UCSCTrack, TrackStore> mStores = new WeakHashMap<UCSCTrack, TrackStore>();
+
+  /**
+   * Whether new stores are allocated off heap.
+   */
+  private boolean mOffHeap = false;
+
+  /**
+   * The navigation history whose visits cache track summaries, or null.
+   */
+  private RegionHistory mHistory = null;
+
+  /**
+   * Identifies the summary of a track at a given width in a visit's cache.
+   * Tracks are compared by identity since two tracks may share a name.
+   */
+  private static class SummaryKey {
+
+    /**
+     * The member track.
+     */
+    private final UCSCTrack mTrack;
+
+    /**
+     * The member pixels.
+     */
+    private final int mPixels;
+
+    /**
+     * Instantiates a new summary key.
+     *
+     * @param track  the track
+     * @param pixels the pixels
+     */
+    public SummaryKey(UCSCTrack track, int pixels) {
+      mTrack = track;
+      mPixels = pixels;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SummaryKey)) {
+        return false;
+      }
+
+      SummaryKey k = (SummaryKey) o;
+
+      return mTrack == k.mTrack && mPixels == k.mPixels;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(mTrack) * 31 + mPixels;
+    }
+  }
+
+  /**
+   * Instantiates a new track store service.
+   */
+  private TrackStoreService() {
+    // Do nothing
+  }
+
+  /**
+   * Sets whether stores created from now on keep their columns outside the
+   * Java heap.
+   *
+   * @param offHeap the new off heap
+   */
+  public synchronized void setOffHeap(boolean offHeap) {
+    mOffHeap = offHeap;
+  }
+
+  /**
+   * Checks if is off heap.
+   *
+   * @return true, if is off heap
+   */
+  public synchronized boolean isOffHeap() {
+    return mOffHeap;
+  }
+
+  /**
+   * Sets the navigation history in whose visits track summaries are cached,
+   * so that returning to a region in the history reuses them.
+   *
+   * @param history the new history
+   */
+  public synchronized void setHistory(RegionHistory history) {
+    mHistory = history;
+  }
+
+  /**
+   * Stop caching summaries in a history if it is the current one, for
+   * example because the component that owns it has been removed.
+   *
+   * @param history the history
+   */
+  public synchronized void removeHistory(RegionHistory history) {
+    if (mHistory == history) {
+      mHistory = null;
+    }
+  }
+
+  /**
+   * Associate a store with a track, for example one loaded from a cache.
+   *
+   * @param track the track
+   * @param store the store
+   */
+  public void put(UCSCTrack track, TrackStore store) {
+    prepare(store);
+
+    synchronized (this) {
+      mStores.put(track, store);
+    }
+  }
+
+  /**
+   * Returns true if a store has already been created for a track.
+   *
+   * @param track the track
+   * @return true, if successful
+   */
+  public synchronized boolean contains(UCSCTrack track) {
+    return mStores.containsKey(track);
+  }
+
+  /**
+   * Gets the store for a track, creating it from the track elements if
+   * necessary. Stores are normally created when a track is loaded so this
+   * should rarely do any work on the event thread.
+   *
+   * @param track the track
+   * @return the store
+   */
+  public TrackStore getStore(UCSCTrack track) {
+    TrackStore store;
+
+    synchronized (this) {
+      store = mStores.get(track);
+    }
+
+    if (store == null) {
+      // Build outside the lock since large tracks take a while
+      store = TrackStore.create(track, isOffHeap());
+
+      prepare(store);
+
+      synchronized (this) {
+        TrackStore existing = mStores.get(track);
+
+        if (existing != null) {
+          store = existing;
+        } else {
+          mStores.put(track, store);
+        }
+      }
+    }
+
+    return store;
+  }
+
+  /**
+   * Build the name index of a store as it is loaded, rather than on the first
+   * search, so that searching a table never has to wait for it.
+   *
+   * @param store the store
+   */
+  private static void prepare(TrackStore store) {
+    if (store.hasNames()) {
+      store.getNameIndex();
+    }
+  }
+
+  /**
+   * Gets the number of intervals in a track without creating its store.
+   *
+   * @param track the track
+   * @return the size
+   */
+  public int size(UCSCTrack track) {
+    TrackStore store;
+
+    synchronized (this) {
+      store = mStores.get(track);
+    }
+
+    return store != null ? store.size() : track.getElements().size();
+  }
+
+  /**
+   * Find the rows of a track's store that overlap a region.
+   *
+   * @param track  the track
+   * @param region the region
+   * @return the rows in ascending order.
+   */
+  public int[] overlap(UCSCTrack track, GenomicRegion region) {
+    return getStore(track).getIndex().overlap(region);
+  }
+
+  /**
+   * Find the rows of a track's store that overlap the current region of a
+   * model.
+   *
+   * @param track the track
+   * @param model the model
+   * @return the rows in ascending order.
+   */
+  public int[] overlap(UCSCTrack track, GenomicRegionModel model) {
+    return overlap(track, model.get());
+  }
+
+  /**
+   * Summarize a track over a region for display across a given number of
+   * pixels using the precomputed zoom levels of its store. If the region is
+   * in the navigation history the summary is cached in its visit, so going
+   * back or forward to it does not query the store again.
+   *
+   * @param track  the track
+   * @param region the region
+   * @param pixels the pixels
+   * @return the summary
+   */
+  public TrackPyramid.Summary summary(UCSCTrack track, GenomicRegion region, int pixels) {
+    RegionHistory history;
+
+    synchronized (this) {
+      history = mHistory;
+    }
+
+    RegionHistory.Visit visit = history != null ? history.getVisit(region) : null;
+
+    if (visit == null) {
+      return getStore(track).getPyramid().query(region, pixels);
+    }
+
+    SummaryKey key = new SummaryKey(track, pixels);
+
+    TrackPyramid.Summary summary = (TrackPyramid.Summary) visit.get(key);
+
+    if (summary == null) {
+      summary = getStore(track).getPyramid().query(region, pixels);
+
+      visit.put(key, summary);
+    }
+
+    return summary;
+  }
+
+  /**
+   * Prepare the loaded stores that have rows on the chromosome of a region
+   * for drawing it, by building their index and zoom levels if necessary and
+   * querying the region, which also pages in the columns of memory mapped
+   * stores. Stores with nothing on the chromosome are left alone.
+   *
+   * @param region the region
+   */
+  public void warm(GenomicRegion region) {
+    List<TrackStore> stores;
+
+    synchronized (this) {
+      stores = new ArrayList<TrackStore>(mStores.values());
+    }
+
+    for (TrackStore store : stores) {
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+
+      if (store.getChrId(region.getChr().toString()) == -1) {
+        continue;
+      }
+
+      store.getIndex().overlap(region);
+
+      if (store.hasValues()) {
+        store.getPyramid();
+      }
+    }
+  }
+}
@@ -33,8 +33,9 @@ import java.util.List;
 
 import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
 import org.jebtk.bioinformatics.genomic.Genome;
-import org.jebtk.bioinformatics.genomic.GenomicElement;
 import org.jebtk.bioinformatics.genomic.GenomicRegion;
+import org.jebtk.bioinformatics.ui.external.ucsc.TrackStore;
+import org.jebtk.bioinformatics.ui.external.ucsc.TrackStoreService;
 import org.jebtk.modern.text.ModernClipboardTextArea;
 
 /**
@@ -82,17 +83,21 @@ public class RegionsTextArea extends ModernClipboardTextArea {
   }
 
   /**
-   * Sets the regions.
+   * Sets the regions. The intervals are read from the track's store since
+   * tracks loaded from the track cache have no elements.
    *
    * @param track the new regions
    */
   public void setRegions(UCSCTrack track) {
-    List<GenomicRegion> regions = new ArrayList<GenomicRegion>();
-
-    for (GenomicElement region : track.getElements()) {
-      regions.add(region);
-    }
+    setRegions(TrackStoreService.getInstance().getStore(track));
+  }
 
-    setRegions(regions);
+  /**
+   * Sets the regions from a columnar track store.
+   *
+   * @param store the store
+   */
+  public void setRegions(TrackStore store) {
+    setText(store.getLocations());
   }
 }
@@ -34,15 +34,11 @@ import java.util.List;
 
 import javax.swing.Box;
 
-import org.jebtk.bioinformatics.ext.ucsc.Bed;
-import org.jebtk.bioinformatics.ext.ucsc.BedGraph;
-import org.jebtk.bioinformatics.ext.ucsc.UCSCTrack;
 import org.jebtk.bioinformatics.file.BioPathUtils;
-import org.jebtk.bioinformatics.genomic.GenomicElement;
-import org.jebtk.bioinformatics.genomic.GenomicRegion;
-import org.jebtk.bioinformatics.genomic.GenomicType;
 import org.jebtk.bioinformatics.ui.external.ucsc.BedGraphGuiFileFilter;
 import org.jebtk.bioinformatics.ui.external.ucsc.BedGuiFileFilter;
+import org.jebtk.bioinformatics.ui.external.ucsc.TrackStore;
+import org.jebtk.bioinformatics.ui.external.ucsc.TrackStoreCache;
 import org.jebtk.bioinformatics.ui.genome.RegionsTextArea;
 import org.jebtk.math.external.microsoft.Excel;
 import org.jebtk.math.ui.external.microsoft.AllXlsxGuiFileFilter;
@@ -232,20 +228,18 @@ public class GroupEditPanel extends ModernComponent implements ModernClickListen
 
       if (BioPathUtils.ext().bedgraph().test(file)) { // getFileExt(file).equals("bedgraph"))
                                                       // {
-        List<BedGraph> bedGraphs = BedGraph.parse(file);
+        List<String> regions = new ArrayList<String>();
 
-        List<GenomicRegion> regions = new ArrayList<GenomicRegion>();
-
-        for (UCSCTrack bedGraph : bedGraphs) {
-          for (GenomicElement region : bedGraph.getElements()) {
-            regions.add(region);
-          }
+        for (TrackStore store : TrackStoreCache.getInstance().bedGraphStores(file)) {
+          regions.addAll(store.getLocations());
         }
 
-        mTextArea.setRegions(regions);
+        mTextArea.setText(regions);
       } else if (BioPathUtils.ext().bed().test(file)) { // PathUtils.getFileExt(file).equals("bed"))
                                                         // {
-        mTextArea.setRegions(Bed.parseTracks(GenomicType.REGION, file).get(0));
+        List<TrackStore> stores = TrackStoreCache.getInstance().bedStores(file);
+
+        mTextArea.setRegions(stores.get(0));
       } else {
         // mTextArea.setRegions(GenomicRegion.parse(Excel.getTextFromFile(file,
         // true)));
@@ -29,6 +29,10 @@ package org.jebtk.bioinformatics.ui.motifs;
 
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -38,9 +42,6 @@ import org.jebtk.bioinformatics.genomic.SequenceService;
 import org.jebtk.bioinformatics.motifs.BaseHeight;
 import org.jebtk.bioinformatics.motifs.BaseHeights;
 import org.jebtk.bioinformatics.motifs.MotifHeights;
-import org.jebtk.core.collections.DefaultTreeMap;
-import org.jebtk.core.collections.IterMap;
-import org.jebtk.core.collections.TreeMapCreator;
 import org.jebtk.graphplot.figure.Axes;
 import org.jebtk.graphplot.figure.Figure;
 import org.jebtk.graphplot.figure.Plot;
@@ -50,7 +51,6 @@ import org.jebtk.math.matrix.DataFrame;
 import org.jebtk.modern.font.FontService;
 import org.jebtk.modern.graphics.AAMode;
 import org.jebtk.modern.graphics.DrawingContext;
-import org.jebtk.modern.graphics.ImageUtils;
 
 /**
  * Draws scales motif letters.
@@ -74,18 +74,41 @@ public abstract class LettersPlotLayer extends PlotClippedLayer {
    */
   protected static final double DRAWING_HEIGHT_THRESHOLD = 0.01;
 
+  /**
+   * The letters that have cached outlines, in the order of GLYPHS. Any other
+   * letter is drawn as N.
+   */
+  private static final String LETTERS = "ACGTN";
+
+  /**
+   * Outlines of the letters, normalized so that each fills a unit box
+   * standing on the baseline. Creating these once means letters can be
+   * filled with a scale transform rather than laid out as text on every
+   * paint.
+   */
+  private static final Shape[] GLYPHS = createGlyphs(LETTER_FONT);
+
   /**
    * The motif heights.
    */
   protected MotifHeights mMotifHeights;
 
-  /** The m Y scale map. */
-  protected IterMap<Character, IterMap<Integer, Double>> mYScaleMap = DefaultTreeMap
-      .create(new TreeMapCreator<Integer, Double>());
+  /**
+   * The vertical scale of each letter at each position of the motif, indexed
+   * by letter * length + position. Letters that are not drawn at a position
+   * have a scale of 0.
+   */
+  protected double[] mScales = null;
+
+  /**
+   * The letter width the scales were computed for.
+   */
+  private int mScaleWidth = -1;
 
-  /** The m X scale map. */
-  protected IterMap<Character, IterMap<Integer, Double>> mXScaleMap = DefaultTreeMap
-      .create(new TreeMapCreator<Integer, Double>());
+  /**
+   * The letter height the scales were computed for.
+   */
+  private int mScaleHeight = -1;
 
   /**
    * Instantiates a new letters plot p layer.
@@ -114,30 +137,29 @@ public abstract class LettersPlotLayer extends PlotClippedLayer {
     int x1;
     int y1;
 
-    g2.setFont(LETTER_FONT);
-
     int w1 = axes.toPlotX1(1) - axes.toPlotX1(0);
 
-    // int letterHeight = ImageUtils.getg2.getFontMetrics().getAscent();// -
-    // g2.getFontMetrics().getDescent();
-
     int h1 = axes.toPlotY1(0) - axes.toPlotY1(1);
 
-    // how much to scale the letter so it fills the y-axis
-    // double hs1 = (double)h1 / (double)letterHeight;
-    // double ws1 = (double)w1 / (double)letterWidth;
+    int n = mMotifHeights.getItemCount();
+
+    if (mScales == null || mScales.length != LETTERS.length() * n || w1 != mScaleWidth || h1 != mScaleHeight) {
+      updateScales(w1, h1);
+    }
 
     double x = 0.5;
     double y = 0;
 
-    for (int i = 0; i < mMotifHeights.getItemCount(); ++i) {
+    // Each letter is drawn by scaling the transform and then restoring it
+    // rather than by cloning the graphics
+    AffineTransform transform = g2.getTransform();
+
+    for (int i = 0; i < n; ++i) {
       BaseHeights baseHeights = mMotifHeights.get(i);
 
       y = 0;
 
       for (BaseHeight baseHeight : baseHeights) {
-        // System.err.println(i + " " + baseHeight.getHeight());
-
         if (baseHeight.getHeight() < DRAWING_HEIGHT_THRESHOLD) {
           continue;
         }
@@ -147,30 +169,9 @@ public abstract class LettersPlotLayer extends PlotClippedLayer {
 
         char c = baseHeight.getChar();
 
-        String s = String.valueOf(c);
-
-        if (!mYScaleMap.get(c).containsKey(i)) {
-          int letterHeight = ImageUtils.getFontHeight(g2, s);
-
-          double hs1 = h1 / (double) letterHeight;
-
-          double scaleY = hs1 * baseHeight.getHeight();
-
-          mYScaleMap.get(c).put(i, scaleY);
-
-          // System.err.println("hs1 " + hs1 + " " + h1 + " " + letterHeight);
-          // System.err.println("scale " + scaleY + " " + baseHeight.getChar() +
-          // " " +baseHeight.getHeight());
+        int letter = letter(c);
 
-          double ws1 = (double) w1 / (double) g2.getFontMetrics().stringWidth(s);
-
-          mXScaleMap.get(c).put(i, ws1);
-        }
-
-        double scaleX = mXScaleMap.get(c).get(i);
-        double scaleY = mYScaleMap.get(c).get(i);
-
-        switch (baseHeight.getChar()) {
+        switch (c) {
         case 'A':
           g2.setColor(SequenceService.getInstance().getBaseAColor());
           break;
@@ -188,15 +189,10 @@ public abstract class LettersPlotLayer extends PlotClippedLayer {
           break;
         }
 
-        Graphics2D g2Temp = ImageUtils.clone(g2);
-
-        try {
-          g2Temp.translate(x1, y1);
-          g2Temp.scale(scaleX, scaleY);
-          g2Temp.drawString(s, 0, 0);
-        } finally {
-          g2Temp.dispose();
-        }
+        g2.translate(x1, y1);
+        g2.scale(w1, mScales[letter * n + i]);
+        g2.fill(GLYPHS[letter]);
+        g2.setTransform(transform);
 
         y += baseHeight.getHeight();
       }
@@ -205,6 +201,91 @@ public abstract class LettersPlotLayer extends PlotClippedLayer {
     }
   }
 
+  /**
+   * Compute the scale of every letter at every position for a given letter
+   * size. The glyphs are unit sized so a letter's scale is simply its height
+   * on the plot. The scales only change when the axes are resized.
+   *
+   * @param w the width of a position on the plot.
+   * @param h the height of one unit of the y axis on the plot.
+   */
+  private void updateScales(int w, int h) {
+    int n = mMotifHeights.getItemCount();
+
+    mScales = new double[LETTERS.length() * n];
+
+    for (int i = 0; i < n; ++i) {
+      for (BaseHeight baseHeight : mMotifHeights.get(i)) {
+        mScales[letter(baseHeight.getChar()) * n + i] = h * baseHeight.getHeight();
+      }
+    }
+
+    mScaleWidth = w;
+    mScaleHeight = h;
+  }
+
+  /**
+   * Returns the index of a letter in the glyph and scale tables.
+   *
+   * @param c the letter
+   * @return the index
+   */
+  private static int letter(char c) {
+    switch (c) {
+    case 'A':
+    case 'a':
+      return 0;
+    case 'C':
+    case 'c':
+      return 1;
+    case 'G':
+    case 'g':
+      return 2;
+    case 'T':
+    case 't':
+      return 3;
+    default:
+      return 4;
+    }
+  }
+
+  /**
+   * Returns the unit outline of a letter.
+   *
+   * @param c the letter
+   * @return the glyph
+   */
+  protected static Shape getGlyph(char c) {
+    return GLYPHS[letter(c)];
+  }
+
+  /**
+   * Create the unit outlines of the letters in a font. Each outline is
+   * translated and scaled so that its bounds run from 0 to 1 horizontally and
+   * from -1 to 0 vertically, i.e. it sits on the baseline at the origin.
+   *
+   * @param font the font
+   * @return the glyphs
+   */
+  private static Shape[] createGlyphs(Font font) {
+    FontRenderContext frc = new FontRenderContext(null, true, true);
+
+    Shape[] glyphs = new Shape[LETTERS.length()];
+
+    for (int i = 0; i < glyphs.length; ++i) {
+      Shape outline = font.createGlyphVector(frc, LETTERS.substring(i, i + 1)).getOutline();
+
+      Rectangle2D bounds = outline.getBounds2D();
+
+      AffineTransform t = AffineTransform.getScaleInstance(1 / bounds.getWidth(), 1 / bounds.getHeight());
+      t.translate(-bounds.getMinX(), -bounds.getMaxY());
+
+      glyphs[i] = t.createTransformedShape(outline);
+    }
+
+    return glyphs;
+  }
+
   /**
    * Adds the char.
    *
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.motifs;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the loaded motif folders of one tree that are collapsed so
+ * that their contents can be discarded once they have been closed for a
+ * while. Must only be used on the event thread.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MotifFolderEvictor {
+
+  /**
+   * Loaded folders that are collapsed, mapped to when they were collapsed.
+   */
+  private final Map<MotifFolderNode, Long> mCollapsed = new IdentityHashMap<MotifFolderNode, Long>();
+
+  /**
+   * Record that a loaded folder has been collapsed.
+   *
+   * @param node the node
+   */
+  public void collapsed(MotifFolderNode node) {
+    mCollapsed.put(node, System.currentTimeMillis());
+  }
+
+  /**
+   * Record that a folder is open or has been unloaded so it should not be
+   * evicted.
+   *
+   * @param node the node
+   */
+  public void remove(MotifFolderNode node) {
+    mCollapsed.remove(node);
+  }
+
+  /**
+   * Unload the folders that have been collapsed for longer than a timeout.
+   *
+   * @param timeout the timeout in milliseconds.
+   * @return the number of folders unloaded.
+   */
+  public int evict(long timeout) {
+    long t = System.currentTimeMillis() - timeout;
+
+    List<MotifFolderNode> expired = new ArrayList<MotifFolderNode>();
+
+    for (Map.Entry<MotifFolderNode, Long> e : mCollapsed.entrySet()) {
+      if (e.getValue() < t) {
+        expired.add(e.getKey());
+      }
+    }
+
+    for (MotifFolderNode node : expired) {
+      node.unload();
+    }
+
+    return expired.size();
+  }
+
+  /**
+   * Forget every collapsed folder, for example when the tree they belong to
+   * has been replaced.
+   */
+  public void clear() {
+    mCollapsed.clear();
+  }
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.motifs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+
+import org.jebtk.bioinformatics.motifs.Motif;
+import org.jebtk.core.path.Path;
+import org.jebtk.core.tree.TreeNode;
+
+/**
+ * A folder of the motif database whose sub folders and motifs are only
+ * fetched the first time it is expanded. Folders that stay collapsed for
+ * a while give up their children again so that the size of the tree follows
+ * what is being viewed rather than the size of the database. Loading and
+ * eviction happen on the event thread, and collapsed folders are tracked by
+ * the {@link MotifFolderEvictor} of the tree they are shown in.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MotifFolderNode extends TreeNode<Motif> {
+
+  /**
+   * The member source.
+   */
+  private final MotifsWeb mSource;
+
+  /**
+   * The member path.
+   */
+  private final Path mPath;
+
+  /**
+   * The member loaded.
+   */
+  private boolean mLoaded = false;
+
+  /**
+   * The load in progress, if any.
+   */
+  private LoadTask mTask = null;
+
+  /**
+   * The member expanded.
+   */
+  private boolean mExpanded = false;
+
+  /**
+   * Tracks the collapsed folders of the tree this folder is shown in, if
+   * any.
+   */
+  private MotifFolderEvictor mEvictor = null;
+
+  /**
+   * Fetches the contents of the folder in the background.
+   */
+  private class LoadTask extends SwingWorker<Void, Void> {
+
+    /**
+     * The member paths.
+     */
+    private List<Path> mPaths;
+
+    /**
+     * The member motifs.
+     */
+    private List<Motif> mMotifs;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#doInBackground()
+     */
+    @Override
+    protected Void doInBackground() throws Exception {
+      mPaths = mSource.getPaths(mPath);
+      mMotifs = mSource.getMotifs(mPath);
+
+      return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#done()
+     */
+    @Override
+    protected void done() {
+      if (isCancelled()) {
+        return;
+      }
+
+      mTask = null;
+
+      try {
+        get();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+        return;
+      } catch (ExecutionException e) {
+        e.printStackTrace();
+        return;
+      }
+
+      for (Path path : mPaths) {
+        MotifFolderNode node = new MotifFolderNode(mSource, path);
+        node.setEvictor(mEvictor);
+
+        addChild(node);
+      }
+
+      for (Motif motif : mMotifs) {
+        addChild(new TreeNode<Motif>(motif.getName() + " (" + motif.getId() + ")", motif));
+      }
+
+      mLoaded = true;
+
+      // The folder may have been closed again while it was loading
+      if (!mExpanded && mEvictor != null) {
+        mEvictor.collapsed(MotifFolderNode.this);
+      }
+
+      fireTreeNodeChanged();
+    }
+  }
+
+  /**
+   * Instantiates a new motif folder node.
+   *
+   * @param source the source
+   * @param path   the path
+   */
+  public MotifFolderNode(MotifsWeb source, Path path) {
+    super(path.getName());
+
+    mSource = source;
+    mPath = path;
+
+    setIsParent(true);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see org.jebtk.core.tree.TreeNode#updateExpanded(boolean)
+   */
+  @Override
+  public void updateExpanded(boolean expanded) {
+    super.updateExpanded(expanded);
+
+    mExpanded = expanded;
+
+    if (expanded) {
+      if (mEvictor != null) {
+        mEvictor.remove(this);
+      }
+
+      if (!mLoaded && mTask == null) {
+        mTask = new LoadTask();
+        mTask.execute();
+      }
+    } else if (mLoaded && mEvictor != null) {
+      mEvictor.collapsed(this);
+    }
+  }
+
+  /**
+   * Sets the evictor of the tree the folder is shown in. Folders without
+   * one are never unloaded.
+   *
+   * @param evictor the new evictor
+   */
+  public void setEvictor(MotifFolderEvictor evictor) {
+    mEvictor = evictor;
+  }
+
+  /**
+   * Returns true if the contents of the folder have been fetched.
+   *
+   * @return true, if is loaded
+   */
+  public boolean isLoaded() {
+    return mLoaded;
+  }
+
+  /**
+   * Discard the contents of the folder. They will be fetched again the next
+   * time it is expanded.
+   */
+  public void unload() {
+    if (mTask != null) {
+      mTask.cancel(true);
+      mTask = null;
+    }
+
+    if (mEvictor != null) {
+      mEvictor.remove(this);
+    }
+
+    if (!mLoaded) {
+      return;
+    }
+
+    List<TreeNode<Motif>> children = new ArrayList<TreeNode<Motif>>(getChildCount());
+
+    for (TreeNode<Motif> child : this) {
+      children.add(child);
+    }
+
+    for (TreeNode<Motif> child : children) {
+      if (child instanceof MotifFolderNode) {
+        ((MotifFolderNode) child).unload();
+      }
+
+      removeChild(child);
+    }
+
+    mLoaded = false;
+
+    fireTreeNodeChanged();
+  }
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.motifs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jebtk.bioinformatics.motifs.Motif;
+import org.jebtk.core.search.SearchStackElement;
+
+/**
+ * Inverted trigram index over the id, name, gene and database of a list of
+ * motifs. Each trigram maps to a bitset of the motifs containing it, so a
+ * term is matched by intersecting the bitsets of its trigrams and checking
+ * the few remaining candidates, and boolean queries are evaluated directly
+ * as bitset operations.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MotifIndex {
+
+  /**
+   * Separates fields so that trigrams never span two of them.
+   */
+  private static final char SEPARATOR = '\0';
+
+  /**
+   * The member motifs.
+   */
+  private final List<Motif> mMotifs;
+
+  /**
+   * The searchable text of each motif in lower case.
+   */
+  private final String[] mText;
+
+  /**
+   * The motifs containing each trigram.
+   */
+  private final Map<String, BitSet> mPostings = new HashMap<String, BitSet>();
+
+  /**
+   * Instantiates a new motif index.
+   *
+   * @param motifs the motifs
+   */
+  public MotifIndex(List<Motif> motifs) {
+    mMotifs = motifs;
+    mText = new String[motifs.size()];
+
+    for (int i = 0; i < mText.length; ++i) {
+      Motif motif = motifs.get(i);
+
+      String text = new StringBuilder().append(motif.getId().toLowerCase()).append(SEPARATOR)
+          .append(motif.getName().toLowerCase()).append(SEPARATOR).append(motif.getGene().toLowerCase())
+          .append(SEPARATOR).append(motif.getDatabase().toLowerCase()).toString();
+
+      mText[i] = text;
+
+      for (int j = 0; j < text.length() - 2; ++j) {
+        String trigram = text.substring(j, j + 3);
+
+        if (trigram.indexOf(SEPARATOR) != -1) {
+          continue;
+        }
+
+        BitSet postings = mPostings.get(trigram);
+
+        if (postings == null) {
+          // Most trigrams occur in few motifs so let the bitset size
+          // itself to the highest motif containing it
+          postings = new BitSet();
+          mPostings.put(trigram, postings);
+        }
+
+        postings.set(i);
+      }
+    }
+  }
+
+  /**
+   * Size.
+   *
+   * @return the int
+   */
+  public int size() {
+    return mText.length;
+  }
+
+  /**
+   * Find the motifs whose id, name, gene or database contain a term,
+   * ignoring case.
+   *
+   * @param term the term
+   * @return the matching motifs as a bitset of indices.
+   */
+  public BitSet match(String term) {
+    String s = term.toLowerCase();
+
+    BitSet ret;
+
+    if (s.length() < 3) {
+      ret = new BitSet(mText.length);
+      ret.set(0, mText.length);
+    } else {
+      ret = null;
+
+      for (int j = 0; j < s.length() - 2; ++j) {
+        BitSet postings = mPostings.get(s.substring(j, j + 3));
+
+        if (postings == null) {
+          return new BitSet();
+        }
+
+        if (ret == null) {
+          ret = (BitSet) postings.clone();
+        } else {
+          ret.and(postings);
+        }
+      }
+    }
+
+    // Trigrams can match out of order so check the candidates
+    for (int i = ret.nextSetBit(0); i >= 0; i = ret.nextSetBit(i + 1)) {
+      if (!mText[i].contains(s)) {
+        ret.clear(i);
+      }
+    }
+
+    return ret;
+  }
+
+  /**
+   * Evaluate a parsed search query.
+   *
+   * @param searchStack the search stack
+   * @return the matching motifs as a bitset of indices.
+   */
+  public BitSet search(Deque<SearchStackElement> searchStack) {
+    if (searchStack.size() == 0) {
+      BitSet ret = new BitSet(mText.length);
+      ret.set(0, mText.length);
+      return ret;
+    }
+
+    Deque<BitSet> resultStack = new ArrayDeque<BitSet>();
+
+    BitSet op1;
+    BitSet op2;
+
+    while (searchStack.size() > 0) {
+      SearchStackElement op = searchStack.pop();
+
+      switch (op.mOp) {
+      case MATCH:
+        resultStack.push(match(op.mText));
+        break;
+      case AND:
+        op2 = resultStack.pop();
+        op1 = resultStack.pop();
+        op1.and(op2);
+        resultStack.push(op1);
+        break;
+      case OR:
+        op2 = resultStack.pop();
+        op1 = resultStack.pop();
+        op1.or(op2);
+        resultStack.push(op1);
+        break;
+      case XOR:
+      case NAND:
+        op2 = resultStack.pop();
+        op1 = resultStack.pop();
+        op1.xor(op2);
+        resultStack.push(op1);
+        break;
+      default:
+        break;
+      }
+    }
+
+    // The final result is on the top of result stack
+    return resultStack.pop();
+  }
+
+  /**
+   * Gets the motifs in a bitset of indices.
+   *
+   * @param motifs the motifs
+   * @return the motifs
+   */
+  public List<Motif> getMotifs(BitSet motifs) {
+    List<Motif> ret = new ArrayList<Motif>(motifs.cardinality());
+
+    for (int i = motifs.nextSetBit(0); i >= 0; i = motifs.nextSetBit(i + 1)) {
+      ret.add(mMotifs.get(i));
+    }
+
+    return ret;
+  }
+}
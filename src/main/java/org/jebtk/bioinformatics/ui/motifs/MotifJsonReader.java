@@ -0,0 +1,549 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.motifs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming decoder for motif database responses. Rather than building a
+ * json tree and then walking it, the response is read token by token as it
+ * arrives and each motif's counts are written straight into the primitive
+ * matrix of a {@link MotifMatrix}. Fields that are not needed are skipped.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MotifJsonReader {
+
+  /**
+   * The constant BUFFER_SIZE.
+   */
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Marks the end of the input.
+   */
+  private static final int EOF = -1;
+
+  /**
+   * The member reader.
+   */
+  private final Reader mReader;
+
+  /**
+   * The member buffer.
+   */
+  private final char[] mBuffer = new char[BUFFER_SIZE];
+
+  /**
+   * The member position in the buffer.
+   */
+  private int mPos = 0;
+
+  /**
+   * The number of chars in the buffer.
+   */
+  private int mLimit = 0;
+
+  /**
+   * Reused for strings and numbers.
+   */
+  private final StringBuilder mText = new StringBuilder();
+
+  /**
+   * Counts of each base of the motif being decoded, grown as needed.
+   */
+  private double[][] mCounts = new double[4][64];
+
+  /**
+   * Instantiates a new motif json reader.
+   *
+   * @param in the in
+   */
+  public MotifJsonReader(InputStream in) {
+    mReader = new InputStreamReader(in, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Decode an array of motifs.
+   *
+   * @param in the in
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static List<MotifMatrix> readMotifs(InputStream in) throws IOException {
+    return new MotifJsonReader(in).readMotifs();
+  }
+
+  /**
+   * Decode an array of paths, each an object with a path field.
+   *
+   * @param in the in
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public static List<String> readPaths(InputStream in) throws IOException {
+    return new MotifJsonReader(in).readPaths();
+  }
+
+  /**
+   * Read motifs.
+   *
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<MotifMatrix> readMotifs() throws IOException {
+    List<MotifMatrix> ret = new ArrayList<MotifMatrix>();
+
+    expect('[');
+
+    if (!endOf(']')) {
+      do {
+        ret.add(readMotif());
+      } while (more(']'));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Read paths.
+   *
+   * @return the list
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public List<String> readPaths() throws IOException {
+    List<String> ret = new ArrayList<String>();
+
+    expect('[');
+
+    if (!endOf(']')) {
+      do {
+        expect('{');
+
+        if (!endOf('}')) {
+          do {
+            String key = readString();
+
+            expect(':');
+
+            if (key.equals("path")) {
+              ret.add(readString());
+            } else {
+              skipValue();
+            }
+          } while (more('}'));
+        }
+      } while (more(']'));
+    }
+
+    return ret;
+  }
+
+  /**
+   * Read one motif object.
+   *
+   * @return the motif matrix
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private MotifMatrix readMotif() throws IOException {
+    String id = "";
+    String name = "";
+    String gene = "";
+    String database = "";
+    int l = 0;
+
+    expect('{');
+
+    if (!endOf('}')) {
+      do {
+        String key = readString();
+
+        expect(':');
+
+        if (key.equals("id")) {
+          id = readText();
+        } else if (key.equals("name")) {
+          name = readText();
+        } else if (key.equals("gene")) {
+          gene = readText();
+        } else if (key.equals("database")) {
+          database = readText();
+        } else if (key.equals("counts")) {
+          l = readCounts();
+        } else {
+          skipValue();
+        }
+      } while (more('}'));
+    }
+
+    double[] counts = new double[4 * l];
+
+    for (int b = 0; b < 4; ++b) {
+      System.arraycopy(mCounts[b], 0, counts, b * l, l);
+    }
+
+    return new MotifMatrix(id, name, gene, database, counts);
+  }
+
+  /**
+   * Read the counts array of a motif into the scratch arrays.
+   *
+   * @return the motif length
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int readCounts() throws IOException {
+    int l = 0;
+
+    expect('[');
+
+    if (endOf(']')) {
+      return 0;
+    }
+
+    do {
+      if (l == mCounts[0].length) {
+        for (int b = 0; b < 4; ++b) {
+          mCounts[b] = Arrays.copyOf(mCounts[b], 2 * l);
+        }
+      }
+
+      for (int b = 0; b < 4; ++b) {
+        mCounts[b][l] = 0;
+      }
+
+      expect('{');
+
+      if (!endOf('}')) {
+        do {
+          String key = readString();
+
+          expect(':');
+
+          int b = base(key);
+
+          if (b != -1) {
+            mCounts[b][l] = readDouble();
+          } else {
+            skipValue();
+          }
+        } while (more('}'));
+      }
+
+      ++l;
+    } while (more(']'));
+
+    return l;
+  }
+
+  /**
+   * Row of a base key.
+   *
+   * @param key the key
+   * @return the row or -1.
+   */
+  private static int base(String key) {
+    if (key.length() != 1) {
+      return -1;
+    }
+
+    switch (key.charAt(0)) {
+    case 'a':
+      return MotifMatrix.A;
+    case 'c':
+      return MotifMatrix.C;
+    case 'g':
+      return MotifMatrix.G;
+    case 't':
+      return MotifMatrix.T;
+    default:
+      return -1;
+    }
+  }
+
+  /**
+   * Read a string value, treating null as empty.
+   *
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private String readText() throws IOException {
+    if (peek() == 'n') {
+      skipValue();
+      return "";
+    }
+
+    return readString();
+  }
+
+  /**
+   * Read a number, which some servers send as a string.
+   *
+   * @return the double
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private double readDouble() throws IOException {
+    int c = peek();
+
+    String text;
+
+    if (c == '"') {
+      text = readString();
+    } else if (c == 'n') {
+      skipValue();
+      return 0;
+    } else {
+      mText.setLength(0);
+
+      while ((c = peekRaw()) != EOF && (Character.isDigit(c) || c == '-' || c == '+' || c == '.' || c == 'e'
+          || c == 'E')) {
+        mText.append((char) c);
+        ++mPos;
+      }
+
+      text = mText.toString();
+    }
+
+    try {
+      return Double.parseDouble(text);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid number " + text);
+    }
+  }
+
+  /**
+   * Read a quoted string.
+   *
+   * @return the string
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private String readString() throws IOException {
+    expect('"');
+
+    mText.setLength(0);
+
+    while (true) {
+      int c = read();
+
+      if (c == EOF) {
+        throw new IOException("Unterminated string");
+      } else if (c == '"') {
+        break;
+      } else if (c == '\\') {
+        c = read();
+
+        switch (c) {
+        case 'n':
+          mText.append('\n');
+          break;
+        case 't':
+          mText.append('\t');
+          break;
+        case 'r':
+          mText.append('\r');
+          break;
+        case 'b':
+          mText.append('\b');
+          break;
+        case 'f':
+          mText.append('\f');
+          break;
+        case 'u':
+          int u = 0;
+
+          for (int i = 0; i < 4; ++i) {
+            // Also catches the end of input since digit(EOF) is -1
+            int d = Character.digit(read(), 16);
+
+            if (d == -1) {
+              throw new IOException("Invalid escape");
+            }
+
+            u = (u << 4) | d;
+          }
+
+          mText.append((char) u);
+          break;
+        default:
+          mText.append((char) c);
+          break;
+        }
+      } else {
+        mText.append((char) c);
+      }
+    }
+
+    return mText.toString();
+  }
+
+  /**
+   * Skip a value of any type.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void skipValue() throws IOException {
+    int c = peek();
+
+    if (c == '"') {
+      readString();
+    } else if (c == '{') {
+      expect('{');
+
+      if (!endOf('}')) {
+        do {
+          readString();
+          expect(':');
+          skipValue();
+        } while (more('}'));
+      }
+    } else if (c == '[') {
+      expect('[');
+
+      if (!endOf(']')) {
+        do {
+          skipValue();
+        } while (more(']'));
+      }
+    } else {
+      // Number, true, false or null
+      while ((c = peekRaw()) != EOF && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+        ++mPos;
+      }
+    }
+  }
+
+  /**
+   * Consume an expected token.
+   *
+   * @param token the token
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void expect(char token) throws IOException {
+    int c = peek();
+
+    if (c != token) {
+      throw new IOException("Expected " + token + " but found " + (c == EOF ? "end of input" : (char) c));
+    }
+
+    ++mPos;
+  }
+
+  /**
+   * Consume a closing token if it is next, for empty objects and arrays.
+   *
+   * @param token the token
+   * @return true, if the token was consumed.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean endOf(char token) throws IOException {
+    if (peek() == token) {
+      ++mPos;
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * After an element, consume either a comma, meaning more follow, or the
+   * closing token.
+   *
+   * @param token the closing token
+   * @return true, if more elements follow.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private boolean more(char token) throws IOException {
+    if (peek() == ',') {
+      ++mPos;
+      return true;
+    }
+
+    expect(token);
+
+    return false;
+  }
+
+  /**
+   * Peek at the next non whitespace char.
+   *
+   * @return the char or EOF.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int peek() throws IOException {
+    int c;
+
+    while ((c = peekRaw()) != EOF && Character.isWhitespace(c)) {
+      ++mPos;
+    }
+
+    return c;
+  }
+
+  /**
+   * Peek at the next char.
+   *
+   * @return the char or EOF.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int peekRaw() throws IOException {
+    if (mPos == mLimit) {
+      mLimit = mReader.read(mBuffer);
+      mPos = 0;
+
+      if (mLimit <= 0) {
+        mLimit = 0;
+        return EOF;
+      }
+    }
+
+    return mBuffer[mPos];
+  }
+
+  /**
+   * Read the next char.
+   *
+   * @return the char or EOF.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private int read() throws IOException {
+    int c = peekRaw();
+
+    if (c != EOF) {
+      ++mPos;
+    }
+
+    return c;
+  }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.motifs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jebtk.bioinformatics.BaseCounts;
+import org.jebtk.bioinformatics.motifs.Motif;
+
+/**
+ * A motif with its base counts held in a single primitive array of four rows
+ * (a, c, g, t) by motif length. This is the form motifs are decoded into and
+ * stored on disk in before a {@link Motif} is created for display.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MotifMatrix {
+
+  /**
+   * Row of each base in the counts.
+   */
+  public static final int A = 0;
+
+  /** The Constant C. */
+  public static final int C = 1;
+
+  /** The Constant G. */
+  public static final int G = 2;
+
+  /** The Constant T. */
+  public static final int T = 3;
+
+  /**
+   * The member id.
+   */
+  private final String mId;
+
+  /**
+   * The member name.
+   */
+  private final String mName;
+
+  /**
+   * The member gene.
+   */
+  private final String mGene;
+
+  /**
+   * The member database.
+   */
+  private final String mDatabase;
+
+  /**
+   * The counts, row major by base.
+   */
+  private final double[] mCounts;
+
+  /**
+   * The member length.
+   */
+  private final int mLength;
+
+  /**
+   * Instantiates a new motif matrix.
+   *
+   * @param id       the id
+   * @param name     the name
+   * @param gene     the gene
+   * @param database the database
+   * @param counts   the counts, 4 rows of length counts.length / 4.
+   */
+  public MotifMatrix(String id, String name, String gene, String database, double[] counts) {
+    mId = id;
+    mName = name;
+    mGene = gene;
+    mDatabase = database;
+    mCounts = counts;
+    mLength = counts.length / 4;
+  }
+
+  /**
+   * Gets the id.
+   *
+   * @return the id
+   */
+  public String getId() {
+    return mId;
+  }
+
+  /**
+   * Gets the name.
+   *
+   * @return the name
+   */
+  public String getName() {
+    return mName;
+  }
+
+  /**
+   * Gets the gene.
+   *
+   * @return the gene
+   */
+  public String getGene() {
+    return mGene;
+  }
+
+  /**
+   * Gets the database.
+   *
+   * @return the database
+   */
+  public String getDatabase() {
+    return mDatabase;
+  }
+
+  /**
+   * Gets the length of the motif.
+   *
+   * @return the length
+   */
+  public int getLength() {
+    return mLength;
+  }
+
+  /**
+   * Gets the count of a base at a position.
+   *
+   * @param base     the base row, e.g. {@link #A}.
+   * @param position the position
+   * @return the count
+   */
+  public double getCount(int base, int position) {
+    return mCounts[base * mLength + position];
+  }
+
+  /**
+   * Gets the counts array, row major by base. The array is not copied.
+   *
+   * @return the counts
+   */
+  public double[] getCounts() {
+    return mCounts;
+  }
+
+  /**
+   * Create a motif for display.
+   *
+   * @return the motif
+   */
+  public Motif toMotif() {
+    List<BaseCounts> counts = new ArrayList<BaseCounts>(mLength);
+
+    for (int i = 0; i < mLength; ++i) {
+      // Convert the values of each column to percentages
+      counts.add(new BaseCounts(getCount(A, i), getCount(C, i), getCount(G, i), getCount(T, i), true));
+    }
+
+    return new Motif(mId, mName, mGene, mDatabase, counts);
+  }
+
+  /**
+   * Create motifs for display.
+   *
+   * @param matrices the matrices
+   * @return the list
+   */
+  public static List<Motif> toMotifs(List<MotifMatrix> matrices) {
+    List<Motif> ret = new ArrayList<Motif>(matrices.size());
+
+    for (MotifMatrix matrix : matrices) {
+      ret.add(matrix.toMotif());
+    }
+
+    return ret;
+  }
+}
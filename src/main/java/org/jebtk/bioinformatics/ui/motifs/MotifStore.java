@@ -0,0 +1,652 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.motifs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jebtk.bioinformatics.motifs.Motif;
+
+/**
+ * On disk store of motif database responses so that motifs can be shown
+ * immediately at startup and when the motif server is slow or offline. Each
+ * response, either a list of paths or a list of motifs, is kept in a compact
+ * binary file named after a hash of its url, together with the validators
+ * (ETag and Last-Modified) needed to revalidate it against the server.
+ * Motif counts are stored as raw doubles.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MotifStore {
+
+  /**
+   * The Class MotifStoreLoader.
+   */
+  private static class MotifStoreLoader {
+
+    /** The Constant INSTANCE. */
+    private static final MotifStore INSTANCE = new MotifStore();
+  }
+
+  /**
+   * Gets the single instance of MotifStore.
+   *
+   * @return single instance of MotifStore
+   */
+  public static MotifStore getInstance() {
+    return MotifStoreLoader.INSTANCE;
+  }
+
+  /**
+   * Identifies a motif store file ("JMS1").
+   */
+  private static final int MAGIC = 0x4A4D5331;
+
+  /**
+   * The Constant VERSION.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * The Constant TYPE_PATHS.
+   */
+  private static final byte TYPE_PATHS = 0;
+
+  /**
+   * The Constant TYPE_MOTIFS.
+   */
+  private static final byte TYPE_MOTIFS = 1;
+
+  /**
+   * The Constant EXT.
+   */
+  private static final String EXT = ".jms";
+
+  /**
+   * The maximum number of entries kept in memory.
+   */
+  private static final int MAX_ENTRIES = 256;
+
+  /**
+   * The member dir.
+   */
+  private Path mDir = Paths.get(System.getProperty("user.home"), ".jebtk", "cache", "motifs");
+
+  /**
+   * Recently used entries, so that fresh entries are not read and decoded
+   * from disk on every request.
+   */
+  private final EntryMap mEntries = new EntryMap();
+
+  /**
+   * Least recently used map of entries.
+   */
+  private static class EntryMap extends LinkedHashMap<String, Entry> {
+
+    /**
+     * The constant serialVersionUID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Instantiates a new entry map.
+     */
+    public EntryMap() {
+      super(MAX_ENTRIES, 0.75f, true);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+     */
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  }
+
+  /**
+   * A stored response.
+   */
+  public static class Entry {
+
+    /**
+     * The member etag.
+     */
+    private final String mEtag;
+
+    /**
+     * The member last modified.
+     */
+    private final long mLastModified;
+
+    /**
+     * When the entry was stored or last revalidated.
+     */
+    private volatile long mChecked;
+
+    /**
+     * The member paths.
+     */
+    private final List<String> mPaths;
+
+    /**
+     * The member motifs.
+     */
+    private final List<MotifMatrix> mMotifs;
+
+    /**
+     * The motifs converted for display, created on first use.
+     */
+    private List<Motif> mMotifList = null;
+
+    /**
+     * The search index of the motifs, created on first use.
+     */
+    private MotifIndex mIndex = null;
+
+    /**
+     * Instantiates a new entry.
+     *
+     * @param etag         the etag
+     * @param lastModified the last modified
+     * @param checked      the checked
+     * @param paths        the paths
+     * @param motifs       the motifs
+     */
+    private Entry(String etag, long lastModified, long checked, List<String> paths, List<MotifMatrix> motifs) {
+      mEtag = etag;
+      mLastModified = lastModified;
+      mChecked = checked;
+      mPaths = paths;
+      mMotifs = motifs;
+    }
+
+    /**
+     * Gets the ETag the server sent, if any.
+     *
+     * @return the etag or null.
+     */
+    public String getEtag() {
+      return mEtag;
+    }
+
+    /**
+     * Gets the Last-Modified time the server sent.
+     *
+     * @return the last modified or 0.
+     */
+    public long getLastModified() {
+      return mLastModified;
+    }
+
+    /**
+     * Gets when the entry was stored or last revalidated.
+     *
+     * @return the checked
+     */
+    public long getChecked() {
+      return mChecked;
+    }
+
+    /**
+     * Sets when the entry was last revalidated.
+     *
+     * @param checked the new checked
+     */
+    private void setChecked(long checked) {
+      mChecked = checked;
+    }
+
+    /**
+     * Gets the paths.
+     *
+     * @return the paths
+     */
+    public List<String> getPaths() {
+      return mPaths;
+    }
+
+    /**
+     * Gets the motifs.
+     *
+     * @return the motifs
+     */
+    public List<MotifMatrix> getMotifs() {
+      return mMotifs;
+    }
+
+    /**
+     * Gets the motifs converted for display. The same list is returned each
+     * time so that it can be shared by searches of the entry.
+     *
+     * @return the motifs
+     */
+    public synchronized List<Motif> toMotifs() {
+      if (mMotifList == null) {
+        mMotifList = Collections.unmodifiableList(MotifMatrix.toMotifs(mMotifs));
+      }
+
+      return mMotifList;
+    }
+
+    /**
+     * Gets the search index of the motifs. It is kept with the entry so that
+     * it is built once per response rather than once per search.
+     *
+     * @return the index
+     */
+    public synchronized MotifIndex getIndex() {
+      if (mIndex == null) {
+        mIndex = new MotifIndex(toMotifs());
+      }
+
+      return mIndex;
+    }
+  }
+
+  /**
+   * Instantiates a new motif store.
+   */
+  private MotifStore() {
+    // Do nothing
+  }
+
+  /**
+   * Instantiates a new motif store in a given directory.
+   *
+   * @param dir the dir
+   */
+  MotifStore(Path dir) {
+    mDir = dir;
+  }
+
+  /**
+   * Sets the directory store files are written to.
+   *
+   * @param dir the new dir
+   */
+  public synchronized void setDir(Path dir) {
+    mDir = dir;
+  }
+
+  /**
+   * Gets the dir.
+   *
+   * @return the dir
+   */
+  public synchronized Path getDir() {
+    return mDir;
+  }
+
+  /**
+   * Read a stored response.
+   *
+   * @param key the key, usually the request url.
+   * @return the entry or null if there is no usable entry.
+   */
+  public Entry read(String key) {
+    Entry entry;
+
+    synchronized (mEntries) {
+      entry = mEntries.get(key);
+    }
+
+    if (entry == null) {
+      entry = load(key);
+
+      if (entry != null) {
+        cache(key, entry);
+      }
+    }
+
+    return entry;
+  }
+
+  /**
+   * Read an entry from disk.
+   *
+   * @param key the key
+   * @return the entry or null if there is no usable entry.
+   */
+  private Entry load(String key) {
+    Path file = file(key);
+
+    if (!Files.exists(file)) {
+      return null;
+    }
+
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          return null;
+        }
+
+        byte type = in.readByte();
+
+        // Guard against hash collisions
+        if (!in.readUTF().equals(key)) {
+          return null;
+        }
+
+        String etag = in.readUTF();
+        long lastModified = in.readLong();
+        long checked = Files.getLastModifiedTime(file).toMillis();
+
+        int n = in.readInt();
+
+        if (type == TYPE_PATHS) {
+          List<String> paths = new ArrayList<String>(n);
+
+          for (int i = 0; i < n; ++i) {
+            paths.add(in.readUTF());
+          }
+
+          return new Entry(etag(etag), lastModified, checked, paths, Collections.<MotifMatrix>emptyList());
+        } else {
+          List<MotifMatrix> motifs = new ArrayList<MotifMatrix>(n);
+
+          for (int i = 0; i < n; ++i) {
+            String id = in.readUTF();
+            String name = in.readUTF();
+            String gene = in.readUTF();
+            String database = in.readUTF();
+
+            double[] counts = new double[in.readInt()];
+
+            for (int j = 0; j < counts.length; ++j) {
+              counts[j] = in.readDouble();
+            }
+
+            motifs.add(new MotifMatrix(id, name, gene, database, counts));
+          }
+
+          return new Entry(etag(etag), lastModified, checked, Collections.<String>emptyList(), motifs);
+        }
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      // A damaged file is treated as missing and will be replaced
+      e.printStackTrace();
+
+      return null;
+    }
+  }
+
+  /**
+   * Store a list of paths. The entry is kept in memory even if it cannot be
+   * written to disk, in which case the failure is logged.
+   *
+   * @param key          the key
+   * @param etag         the etag or null.
+   * @param lastModified the last modified or 0.
+   * @param paths        the paths
+   * @return the entry
+   */
+  public Entry writePaths(String key, String etag, long lastModified, List<String> paths) {
+    Entry entry = new Entry(etag, lastModified, System.currentTimeMillis(), paths,
+        Collections.<MotifMatrix>emptyList());
+
+    cache(key, entry);
+
+    try {
+      DataOutputStream out = open(key, TYPE_PATHS, etag, lastModified, paths.size());
+
+      try {
+        for (String path : paths) {
+          out.writeUTF(path);
+        }
+      } finally {
+        out.close();
+      }
+
+      commit(key);
+    } catch (IOException e) {
+      // The response is still usable from memory even if it cannot be kept
+      // on disk, e.g. because the home directory is read only or full
+      discard(key);
+
+      e.printStackTrace();
+    }
+
+    return entry;
+  }
+
+  /**
+   * Store a list of motifs. The entry is kept in memory even if it cannot be
+   * written to disk, in which case the failure is logged.
+   *
+   * @param key          the key
+   * @param etag         the etag or null.
+   * @param lastModified the last modified or 0.
+   * @param motifs       the motifs
+   * @return the entry
+   */
+  public Entry writeMotifs(String key, String etag, long lastModified, List<MotifMatrix> motifs) {
+    Entry entry = new Entry(etag, lastModified, System.currentTimeMillis(), Collections.<String>emptyList(),
+        motifs);
+
+    cache(key, entry);
+
+    try {
+      DataOutputStream out = open(key, TYPE_MOTIFS, etag, lastModified, motifs.size());
+
+      try {
+        for (MotifMatrix motif : motifs) {
+          out.writeUTF(motif.getId());
+          out.writeUTF(motif.getName());
+          out.writeUTF(motif.getGene());
+          out.writeUTF(motif.getDatabase());
+
+          double[] counts = motif.getCounts();
+
+          out.writeInt(counts.length);
+
+          for (double count : counts) {
+            out.writeDouble(count);
+          }
+        }
+      } finally {
+        out.close();
+      }
+
+      commit(key);
+    } catch (IOException e) {
+      // The response is still usable from memory even if it cannot be kept
+      // on disk, e.g. because the home directory is read only or full
+      discard(key);
+
+      e.printStackTrace();
+    }
+
+    return entry;
+  }
+
+  /**
+   * Record that a stored response has been revalidated against the server.
+   *
+   * @param key the key
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  public void touch(String key) throws IOException {
+    long checked = System.currentTimeMillis();
+
+    synchronized (mEntries) {
+      Entry entry = mEntries.get(key);
+
+      if (entry != null) {
+        entry.setChecked(checked);
+      }
+    }
+
+    Path file = file(key);
+
+    if (Files.exists(file)) {
+      Files.setLastModifiedTime(file, FileTime.fromMillis(checked));
+    }
+  }
+
+  /**
+   * Delete the temporary file of a failed write.
+   *
+   * @param key the key
+   */
+  private void discard(String key) {
+    try {
+      Files.deleteIfExists(tmp(key));
+    } catch (IOException e) {
+      // The directory itself could not be used so there is nothing to
+      // delete
+    }
+  }
+
+  /**
+   * Keep an entry in memory.
+   *
+   * @param key   the key
+   * @param entry the entry
+   */
+  private void cache(String key, Entry entry) {
+    synchronized (mEntries) {
+      mEntries.put(key, entry);
+    }
+  }
+
+  /**
+   * Open a temporary file for an entry and write its header.
+   *
+   * @param key          the key
+   * @param type         the type
+   * @param etag         the etag
+   * @param lastModified the last modified
+   * @param n            the number of items.
+   * @return the data output stream
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private DataOutputStream open(String key, byte type, String etag, long lastModified, int n) throws IOException {
+    Path tmp = tmp(key);
+
+    Files.createDirectories(tmp.getParent());
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeByte(type);
+    out.writeUTF(key);
+    out.writeUTF(etag != null ? etag : "");
+    out.writeLong(lastModified);
+    out.writeInt(n);
+
+    return out;
+  }
+
+  /**
+   * Move a completed temporary file into place so that readers never see a
+   * partly written entry.
+   *
+   * @param key the key
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private void commit(String key) throws IOException {
+    Files.move(tmp(key), file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * The file of an entry.
+   *
+   * @param key the key
+   * @return the path
+   */
+  private Path file(String key) {
+    return getDir().resolve(hash(key) + EXT);
+  }
+
+  /**
+   * The temporary file of an entry.
+   *
+   * @param key the key
+   * @return the path
+   */
+  private Path tmp(String key) {
+    return getDir().resolve(hash(key) + "." + Thread.currentThread().getId() + ".tmp");
+  }
+
+  /**
+   * Empty etags are stored for missing ones.
+   *
+   * @param etag the etag
+   * @return the etag or null.
+   */
+  private static String etag(String etag) {
+    return etag.length() > 0 ? etag : null;
+  }
+
+  /**
+   * Hash.
+   *
+   * @param s the s
+   * @return the string
+   */
+  private static String hash(String s) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+
+      StringBuilder buffer = new StringBuilder();
+
+      for (byte b : digest) {
+        buffer.append(String.format("%02x", b));
+      }
+
+      return buffer.toString();
+    } catch (NoSuchAlgorithmException e) {
+      return Integer.toHexString(s.hashCode());
+    }
+  }
+}
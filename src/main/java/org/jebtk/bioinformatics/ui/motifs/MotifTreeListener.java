@@ -0,0 +1,57 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.motifs;
+
+import java.util.EventListener;
+import java.util.List;
+
+import org.jebtk.bioinformatics.motifs.Motif;
+import org.jebtk.core.tree.TreeNode;
+
+/**
+ * Notified as a motif tree is assembled so that partial trees can be shown
+ * before a crawl of the motif database has finished. The tree is built off
+ * screen and handed over in batches. The builder does not add the children
+ * of a batch itself, so that the listener can add them on the thread that
+ * owns the tree, usually the event thread.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public interface MotifTreeListener extends EventListener {
+
+  /**
+   * Called on the thread building the tree with new children of a node. The
+   * node is either the root or a child from an earlier batch. The children,
+   * and any nodes below them, are no longer changed by the builder.
+   *
+   * @param parent   the node the children belong under.
+   * @param children the children to add.
+   */
+  public void childrenFound(TreeNode<Motif> parent, List<TreeNode<Motif>> children);
+}
@@ -27,10 +27,18 @@
  */
 package org.jebtk.bioinformatics.ui.motifs;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 import org.jebtk.bioinformatics.motifs.Motif;
 import org.jebtk.bioinformatics.motifs.MotifsDataSourceService;
@@ -80,6 +88,16 @@ public final class MotifsTreePanel extends ModernComponent {
    */
   private static final int EXPAND_THRESHOLD = 100;
 
+  /**
+   * How long a folder must stay collapsed before its contents are discarded.
+   */
+  private static final int COLLAPSE_TIMEOUT = 60000;
+
+  /**
+   * How often collapsed folders are checked.
+   */
+  private static final int EVICT_DELAY = 10000;
+
   /**
    * The member tree.
    */
@@ -117,6 +135,22 @@ public final class MotifsTreePanel extends ModernComponent {
   /** The m window. */
   private ModernWindow mWindow;
 
+  /**
+   * The search in progress, if any.
+   */
+  private volatile RefreshTask mTask;
+
+  /**
+   * Tracks the collapsed folders of the tree so they can be unloaded.
+   */
+  private final MotifFolderEvictor mEvictor = new MotifFolderEvictor();
+
+  /**
+   * Unloads folders that have been collapsed for a while. It only runs
+   * while the panel is displayed.
+   */
+  private final Timer mEvictTimer = new Timer(EVICT_DELAY, new EvictEvents());
+
   // private boolean mState = true;
 
   /**
@@ -164,6 +198,230 @@ public final class MotifsTreePanel extends ModernComponent {
 
   }
 
+  /**
+   * Children found by a search, waiting to be added to the tree.
+   */
+  private static class Batch {
+
+    /**
+     * The member parent.
+     */
+    private final TreeNode<Motif> mParent;
+
+    /**
+     * The member children.
+     */
+    private final List<TreeNode<Motif>> mChildren;
+
+    /**
+     * Instantiates a new batch.
+     *
+     * @param parent   the parent
+     * @param children the children
+     */
+    public Batch(TreeNode<Motif> parent, List<TreeNode<Motif>> children) {
+      mParent = parent;
+      mChildren = children;
+    }
+  }
+
+  /**
+   * Searches the motif data sources in the background, and a newer search
+   * cancels this one. The data sources build the tree off screen and the
+   * nodes they find are added to the visible tree in batches on the event
+   * thread, so the tree is never changed while it is being painted.
+   */
+  private class RefreshTask extends SwingWorker<Void, Batch> implements MotifTreeListener {
+
+    /**
+     * The visible node motifs are added under.
+     */
+    private final TreeNode<Motif> mNode;
+
+    /**
+     * The off screen node the data sources build the tree under. Children
+     * found for it belong under the visible node.
+     */
+    private final TreeNode<Motif> mBuildNode = new TreeNode<Motif>("Motifs");
+
+    /**
+     * The member terms.
+     */
+    private final List<String> mTerms;
+
+    /**
+     * The member in list.
+     */
+    private final boolean mInList;
+
+    /**
+     * The member exact.
+     */
+    private final boolean mExact;
+
+    /**
+     * The member case sensitive.
+     */
+    private final boolean mCaseSensitive;
+
+    /**
+     * Instantiates a new refresh task.
+     *
+     * @param node          the node
+     * @param terms         the terms
+     * @param inList        the in list
+     * @param exact         the exact
+     * @param caseSensitive the case sensitive
+     */
+    public RefreshTask(TreeNode<Motif> node, List<String> terms, boolean inList, boolean exact,
+        boolean caseSensitive) {
+      mNode = node;
+      mTerms = terms;
+      mInList = inList;
+      mExact = exact;
+      mCaseSensitive = caseSensitive;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.jebtk.bioinformatics.ui.motifs.MotifTreeListener#childrenFound(org.
+     * jebtk.core.tree.TreeNode, java.util.List)
+     */
+    @Override
+    public void childrenFound(TreeNode<Motif> parent, List<TreeNode<Motif>> children) {
+      if (!isCancelled()) {
+        publish(new Batch(parent, children));
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#doInBackground()
+     */
+    @Override
+    protected Void doInBackground() throws Exception {
+      // Only this search hears about the tree built on this thread
+      MotifsWeb.setTreeListener(this);
+
+      try {
+        MotifsDataSourceService.getInstance().createTree(mBuildNode, mTerms, mInList, mExact, mCaseSensitive);
+      } finally {
+        MotifsWeb.setTreeListener(null);
+      }
+
+      return null;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#process(java.util.List)
+     */
+    @Override
+    protected void process(List<Batch> batches) {
+      if (isCancelled()) {
+        return;
+      }
+
+      // The same folder is often added to several times at once so it is
+      // only redrawn once
+      Set<TreeNode<Motif>> changed = Collections.newSetFromMap(new IdentityHashMap<TreeNode<Motif>, Boolean>());
+
+      for (Batch batch : batches) {
+        TreeNode<Motif> parent = batch.mParent == mBuildNode ? mNode : batch.mParent;
+
+        for (TreeNode<Motif> child : batch.mChildren) {
+          addChild(parent, child);
+        }
+
+        changed.add(parent);
+      }
+
+      for (TreeNode<Motif> node : changed) {
+        node.fireTreeNodeChanged();
+      }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see javax.swing.SwingWorker#done()
+     */
+    @Override
+    protected void done() {
+      if (isCancelled()) {
+        return;
+      }
+
+      if (mTask == this) {
+        mTask = null;
+      }
+
+      // Data sources that do not report batches add straight to the off
+      // screen node, so move what they found into the tree
+      List<TreeNode<Motif>> children = new ArrayList<TreeNode<Motif>>();
+
+      for (TreeNode<Motif> child : mBuildNode) {
+        children.add(child);
+      }
+
+      for (TreeNode<Motif> child : children) {
+        addChild(mNode, child);
+      }
+
+      try {
+        get();
+      } catch (InterruptedException e) {
+        e.printStackTrace();
+      } catch (ExecutionException e) {
+        e.printStackTrace();
+
+        mNode.fireTreeNodeChanged();
+
+        // A failed search must not look like one that found nothing
+        ModernMessageDialog.createInformationDialog(mWindow,
+            "The motifs could not be searched: " + e.getCause().getMessage());
+
+        return;
+      }
+
+      int n = mNode.getCumulativeChildCount();
+
+      // Only small search results are expanded. Large trees are left
+      // collapsed so there is no need to walk every node to update its
+      // state, and when browsing, expanding would load every folder.
+      if (mTerms.size() > 0 && n <= EXPAND_THRESHOLD) {
+        mNode.updateChildrenAreExpanded(true, true);
+      }
+
+      mNode.fireTreeNodeChanged();
+
+      if (n == 0) {
+        ModernMessageDialog.createInformationDialog(mWindow, "No motifs were found.");
+      }
+    }
+  }
+
+  /**
+   * Discards the contents of folders that have been collapsed for a while.
+   */
+  private class EvictEvents implements ActionListener {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * java.awt.event.ActionListener#actionPerformed(java.awt.event.ActionEvent)
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+      mEvictor.evict(COLLAPSE_TIMEOUT);
+    }
+  }
+
   /**
    * The class RefreshEvents.
    */
@@ -177,11 +435,7 @@ public final class MotifsTreePanel extends ModernComponent {
      */
     @Override
     public void clicked(ModernClickEvent e) {
-      try {
-        refresh();
-      } catch (Exception e1) {
-        e1.printStackTrace();
-      }
+      refresh();
     }
 
   }
@@ -268,11 +522,7 @@ public final class MotifsTreePanel extends ModernComponent {
     mExpandButton.addClickListener(new ExpandEvents());
     mSearchPanel.addClickListener(new RefreshEvents());
 
-    try {
-      refresh();
-    } catch (Exception e) {
-      e.printStackTrace();
-    }
+    refresh();
   }
 
   /**
@@ -325,12 +575,59 @@ public final class MotifsTreePanel extends ModernComponent {
     mTree.addSelectionListener(new SelectionEvents());
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see javax.swing.JComponent#addNotify()
+   */
+  @Override
+  public void addNotify() {
+    super.addNotify();
+
+    mEvictTimer.start();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see javax.swing.JComponent#removeNotify()
+   */
+  @Override
+  public void removeNotify() {
+    // Nothing is evicted while the panel is not shown, and the timer no
+    // longer keeps the panel alive once it has been closed
+    mEvictTimer.stop();
+
+    super.removeNotify();
+  }
+
   /**
-   * Generate a tree view of a sample folder and its sub folders.
+   * Add a node to the tree on the event thread. Lazy folders are told which
+   * tree they belong to so they can be unloaded when collapsed.
    *
-   * @throws Exception the exception
+   * @param parent the parent
+   * @param child  the child
+   */
+  private void addChild(TreeNode<Motif> parent, TreeNode<Motif> child) {
+    if (child instanceof MotifFolderNode) {
+      ((MotifFolderNode) child).setEvictor(mEvictor);
+    }
+
+    parent.addChild(child);
+  }
+
+  /**
+   * Generate a tree view of a sample folder and its sub folders. The search
+   * runs in the background and replaces any search still in progress.
    */
-  public void refresh() throws Exception {
+  public void refresh() {
+    if (mTask != null) {
+      mTask.cancel(true);
+    }
+
+    // Folders of the previous tree no longer need to be evicted
+    mEvictor.clear();
+
     TreeRootNode<Motif> root = new TreeRootNode<>();
 
     List<String> terms = Splitter.on(TextUtils.COMMA_DELIMITER).trim().ignoreEmptyStrings()
@@ -338,23 +635,18 @@ public final class MotifsTreePanel extends ModernComponent {
 
     TreeNode<Motif> node = new TreeNode<>("Motifs");
 
-    MotifsDataSourceService.getInstance().createTree(node, terms, mSearchPanel.getInList(), mSearchPanel.getExact(),
-        mSearchPanel.getCaseSensitive());
-
+    // Show the tree straight away so that motifs appear as they are found
     root.addChild(node);
 
     mTree.setRoot(root);
 
     // The motifs node is always expanded
     node.updateExpanded(true);
-    // The motifs node's children are expanded on condition there are
-    // fewer than EXPAND_THRESHOLD
-    node.updateChildrenAreExpanded(node.getCumulativeChildCount() <= EXPAND_THRESHOLD, true);
-    node.fireTreeNodeChanged();
 
-    if (mTree.getRoot().getCumulativeChildCount() == 0) {
-      ModernMessageDialog.createInformationDialog(mWindow, "No motifs were found.");
-    }
+    mTask = new RefreshTask(node, terms, mSearchPanel.getInList(), mSearchPanel.getExact(),
+        mSearchPanel.getCaseSensitive());
+
+    mTask.execute();
   }
 
   // private void setState() {
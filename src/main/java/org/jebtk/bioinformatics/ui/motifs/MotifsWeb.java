@@ -28,21 +28,29 @@
 package org.jebtk.bioinformatics.ui.motifs;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-import org.jebtk.bioinformatics.BaseCounts;
 import org.jebtk.bioinformatics.motifs.Motif;
 import org.jebtk.bioinformatics.motifs.MotifDataSource;
-import org.jebtk.core.collections.CollectionUtils;
 import org.jebtk.core.http.URLPath;
-import org.jebtk.core.json.Json;
-import org.jebtk.core.json.JsonParser;
 import org.jebtk.core.path.Path;
 import org.jebtk.core.path.RootPath;
 import org.jebtk.core.search.SearchStackElement;
@@ -59,6 +67,42 @@ public class MotifsWeb extends MotifDataSource {
    */
   private static final Path BASE_DIR = new RootPath();
 
+  /**
+   * How long a stored response is used before it is revalidated with the
+   * server.
+   */
+  private static final long MAX_AGE = 60 * 60 * 1000;
+
+  /**
+   * The constant CONNECT_TIMEOUT.
+   */
+  private static final int CONNECT_TIMEOUT = 5000;
+
+  /**
+   * The constant READ_TIMEOUT.
+   */
+  private static final int READ_TIMEOUT = 15000;
+
+  /**
+   * The maximum number of requests made at once when crawling the motif
+   * hierarchy.
+   */
+  private static final int CRAWL_THREADS = 8;
+
+  /**
+   * Shared by all crawls so that the number of open connections stays
+   * bounded however many trees are being built.
+   */
+  private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(CRAWL_THREADS,
+      new CrawlThreadFactory());
+
+  /**
+   * The listener of the crawl running on each thread. A listener is set for
+   * one crawl at a time by the thread that runs it, so nothing is held on to
+   * once the crawl is over.
+   */
+  private static final ThreadLocal<MotifTreeListener> LISTENER = new ThreadLocal<MotifTreeListener>();
+
   /**
    * The member url.
    */
@@ -75,9 +119,211 @@ public class MotifsWeb extends MotifDataSource {
   private URLPath mMotifsUrl;
 
   /**
-   * The member parser.
+   * The member store.
+   */
+  private final MotifStore mStore;
+
+  /**
+   * How long a stored response is used before it is revalidated.
+   */
+  private final long mMaxAge;
+
+  /**
+   * Creates daemon threads for crawling so that a slow server never keeps
+   * the application alive.
+   */
+  private static class CrawlThreadFactory implements ThreadFactory {
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+     */
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "motifs-crawl");
+      thread.setDaemon(true);
+
+      return thread;
+    }
+  }
+
+  /**
+   * A directory in the motif hierarchy. Its node is only attached to its
+   * parent once motifs are found in or below it so that empty folders do not
+   * appear in the tree. Until then it is off screen and can be built up
+   * directly.
+   */
+  private static class Dir {
+
+    /**
+     * The member path.
+     */
+    private final Path mPath;
+
+    /**
+     * The member node.
+     */
+    private final TreeNode<Motif> mNode;
+
+    /**
+     * The member parent.
+     */
+    private final Dir mParent;
+
+    /**
+     * The member attached.
+     */
+    private boolean mAttached;
+
+    /**
+     * Instantiates a new dir.
+     *
+     * @param path   the path
+     * @param node   the node
+     * @param parent the parent or null if this is the root.
+     */
+    public Dir(Path path, TreeNode<Motif> node, Dir parent) {
+      mPath = path;
+      mNode = node;
+      mParent = parent;
+      mAttached = parent == null;
+    }
+  }
+
+  /**
+   * The result of fetching either the sub paths or the motifs of a
+   * directory.
+   */
+  private static class Result {
+
+    /**
+     * The member dir.
+     */
+    private final Dir mDir;
+
+    /**
+     * The sub paths or null if this is a motifs result.
+     */
+    private final List<Path> mPaths;
+
+    /**
+     * The matching motifs or null if this is a paths result.
+     */
+    private final List<Motif> mMotifs;
+
+    /**
+     * Why the directory could not be fetched, or null if it was.
+     */
+    private final Exception mError;
+
+    /**
+     * Instantiates a new result.
+     *
+     * @param dir    the dir
+     * @param paths  the paths
+     * @param motifs the motifs
+     */
+    public Result(Dir dir, List<Path> paths, List<Motif> motifs) {
+      mDir = dir;
+      mPaths = paths;
+      mMotifs = motifs;
+      mError = null;
+    }
+
+    /**
+     * Instantiates a result for a directory that could not be fetched.
+     *
+     * @param dir   the dir
+     * @param error the error
+     */
+    public Result(Dir dir, Exception error) {
+      mDir = dir;
+      mPaths = null;
+      mMotifs = null;
+      mError = error;
+    }
+  }
+
+  /**
+   * Fetches the sub paths of a directory.
+   */
+  private class PathsTask implements Callable<Result> {
+
+    /**
+     * The member dir.
+     */
+    private final Dir mDir;
+
+    /**
+     * Instantiates a new paths task.
+     *
+     * @param dir the dir
+     */
+    public PathsTask(Dir dir) {
+      mDir = dir;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.Callable#call()
+     */
+    @Override
+    public Result call() {
+      try {
+        return new Result(mDir, getPaths(mDir.mPath), null);
+      } catch (IOException e) {
+        return new Result(mDir, e);
+      } catch (ParseException e) {
+        return new Result(mDir, e);
+      }
+    }
+  }
+
+  /**
+   * Fetches the motifs of a directory and keeps those matching the search
+   * terms.
    */
-  private JsonParser mParser;
+  private class MotifsTask implements Callable<Result> {
+
+    /**
+     * The member dir.
+     */
+    private final Dir mDir;
+
+    /**
+     * The member terms.
+     */
+    private final List<String> mTerms;
+
+    /**
+     * Instantiates a new motifs task.
+     *
+     * @param dir   the dir
+     * @param terms the terms
+     */
+    public MotifsTask(Dir dir, List<String> terms) {
+      mDir = dir;
+      mTerms = terms;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.concurrent.Callable#call()
+     */
+    @Override
+    public Result call() {
+      try {
+        return new Result(mDir, null, search(mDir.mPath, mTerms));
+      } catch (IOException e) {
+        return new Result(mDir, e);
+      } catch (ParseException e) {
+        return new Result(mDir, e);
+      }
+    }
+  }
 
   /**
    * Instantiates a new motifs web.
@@ -95,11 +341,25 @@ public class MotifsWeb extends MotifDataSource {
    * @throws IOException Signals that an I/O exception has occurred.
    */
   public MotifsWeb(URL url) throws IOException {
+    this(url, MotifStore.getInstance(), MAX_AGE);
+  }
+
+  /**
+   * Instantiates a new motifs web using a given store.
+   *
+   * @param url    the url
+   * @param store  the store
+   * @param maxAge how long a stored response is used before it is
+   *               revalidated with the server.
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  MotifsWeb(URL url, MotifStore store, long maxAge) throws IOException {
+    mStore = store;
+    mMaxAge = maxAge;
+
     mUrl = URLPath.fromUrl(url);
     mPathsUrl = mUrl.join("paths");
     mMotifsUrl = mUrl.join("motifs");
-
-    mParser = new JsonParser();
   }
 
   /*
@@ -114,126 +374,264 @@ public class MotifsWeb extends MotifDataSource {
       boolean caseSensitive) throws IOException, ParseException {
     // TreeRootNode<Motif> root = new TreeRootNode<Motif>();
 
-    createTreeDir(BASE_DIR, root, terms);
+    if (terms.size() > 0) {
+      createTreeDir(BASE_DIR, root, terms);
+    } else {
+      createLazyTree(BASE_DIR, root);
+    }
 
     // return root;
   }
 
   /**
-   * Creates the tree dir.
+   * When browsing rather than searching, only the top level of the
+   * hierarchy is fetched. Each folder loads its own contents when it is
+   * first expanded.
    *
    * @param root     the root
    * @param rootNode the root node
-   * @param terms    the terms
-   * @return true, if successful
    * @throws IOException    Signals that an I/O exception has occurred.
    * @throws ParseException the parse exception
    */
-  private boolean createTreeDir(Path root, TreeNode<Motif> rootNode, List<String> terms)
-      throws IOException, ParseException {
-    /*
-     * for (Path path : getPaths(root)) { TreeNode<Motif> node = new
-     * TreeNode<Motif>(path.getName());
-     * 
-     * node.setIsParent(true); rootNode.addChild(node);
-     * 
-     * createTreeDir(path, node, terms);
-     * 
-     * 
-     * }
-     * 
-     * Deque<SearchStackElement<Motif>> searchStack =
-     * SearchStackElement.parseQuery(search);
-     * 
-     * List<Motif> motifs = search(getMotifs(root), searchStack);
-     * 
-     * for (Motif motif : motifs) { rootNode.addChild(new
-     * TreeNode<Motif>(motif.getName() + " (" + motif.getId() + ")", motif)); }
-     * 
-     * return motifs.size() > 0;
-     */
+  private void createLazyTree(Path root, TreeNode<Motif> rootNode) throws IOException, ParseException {
+    List<TreeNode<Motif>> children = new ArrayList<TreeNode<Motif>>();
+
+    for (Path path : getPaths(root)) {
+      children.add(new MotifFolderNode(this, path));
+    }
+
+    for (Motif motif : getMotifs(root)) {
+      children.add(new TreeNode<Motif>(motif.getName() + " (" + motif.getId() + ")", motif));
+    }
 
-    return false;
+    addChildren(rootNode, children);
   }
 
   /**
-   * Search.
+   * Set the listener to notify as motif trees are built by the calling
+   * thread. Callers should clear it with null once their search is done.
    *
-   * @param motifs      the motifs
-   * @param searchStack the search stack
-   * @return the list
+   * @param l the listener or null to remove it.
    */
-  public static List<Motif> search(List<Motif> motifs, Deque<SearchStackElement> searchStack) {
+  public static void setTreeListener(MotifTreeListener l) {
+    if (l != null) {
+      LISTENER.set(l);
+    } else {
+      LISTENER.remove();
+    }
+  }
 
-    if (searchStack.size() == 0) {
-      return motifs;
+  /**
+   * Add children to a node that is part of the tree being returned. If a
+   * listener is set, the children are handed to it to add instead, so that
+   * nodes that may already be on screen are only changed by the listener.
+   *
+   * @param parent   the parent
+   * @param children the children
+   */
+  private static void addChildren(TreeNode<Motif> parent, List<TreeNode<Motif>> children) {
+    MotifTreeListener l = LISTENER.get();
+
+    if (l != null) {
+      l.childrenFound(parent, children);
+    } else {
+      for (TreeNode<Motif> child : children) {
+        parent.addChild(child);
+      }
     }
+  }
+
+  /**
+   * Creates the tree dir by crawling the hierarchy below root. The sub paths
+   * and motifs of sibling directories are fetched in parallel and the tree
+   * is assembled on the calling thread as each response arrives, so the
+   * time taken follows the depth of the hierarchy rather than the number of
+   * directories in it. A directory that cannot be fetched is logged and
+   * skipped so that the rest of the tree is still built; only a failure of
+   * the root is thrown.
+   *
+   * @param root     the root
+   * @param rootNode the root node
+   * @param terms    the terms
+   * @return true, if any motifs were found.
+   * @throws IOException    Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  private boolean createTreeDir(Path root, TreeNode<Motif> rootNode, List<String> terms)
+      throws IOException, ParseException {
+    CompletionService<Result> service = new ExecutorCompletionService<Result>(EXECUTOR);
 
-    // int categoryId = getAllCategoriesId(connection);
+    List<Future<Result>> futures = new ArrayList<Future<Result>>();
 
-    SearchStackElement op = null;
-    SearchStackElement newOp;
-    List<Motif> op1;
-    List<Motif> op2;
+    submit(service, futures, new Dir(root, rootNode, null), terms);
 
-    Deque<List<Motif>> resultStack = new ArrayDeque<List<Motif>>();
+    boolean found = false;
 
-    List<Motif> sampleIds;
+    try {
+      for (int pending = 2; pending > 0; --pending) {
+        Result result = take(service);
+
+        if (result.mError != null) {
+          if (result.mDir.mParent == null) {
+            if (result.mError instanceof ParseException) {
+              throw (ParseException) result.mError;
+            }
 
-    while (searchStack.size() > 0) {
-      op = searchStack.pop();
+            throw (IOException) result.mError;
+          }
 
-      switch (op.mOp) {
-      case MATCH:
-        String s = op.mText.toLowerCase();
+          System.err.println("Skipping motif path " + result.mDir.mPath + ": " + result.mError);
+        } else if (result.mPaths != null) {
+          for (Path path : result.mPaths) {
+            TreeNode<Motif> node = new TreeNode<Motif>(path.getName());
+            node.setIsParent(true);
 
-        sampleIds = new ArrayList<Motif>();
+            submit(service, futures, new Dir(path, node, result.mDir), terms);
 
-        for (Motif motif : motifs) {
-          if (motif.getName().toLowerCase().contains(s) || motif.getId().toLowerCase().contains(s)
-              || motif.getGene().toLowerCase().contains(s)) {
-            sampleIds.add(motif);
+            pending += 2;
           }
+        } else if (result.mMotifs.size() > 0) {
+          List<TreeNode<Motif>> children = new ArrayList<TreeNode<Motif>>(result.mMotifs.size());
+
+          for (Motif motif : result.mMotifs) {
+            children.add(new TreeNode<Motif>(motif.getName() + " (" + motif.getId() + ")", motif));
+          }
+
+          if (result.mDir.mAttached) {
+            addChildren(result.mDir.mNode, children);
+          } else {
+            // The folder is still off screen so fill it before attaching it
+            for (TreeNode<Motif> child : children) {
+              result.mDir.mNode.addChild(child);
+            }
+
+            attach(result.mDir);
+          }
+
+          found = true;
         }
+      }
+    } finally {
+      // Stop outstanding requests if the crawl failed or was interrupted
+      for (Future<Result> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    return found;
+  }
+
+  /**
+   * Submit the requests for the sub paths and the motifs of a directory.
+   *
+   * @param service the service
+   * @param futures the futures
+   * @param dir     the dir
+   * @param terms   the terms
+   */
+  private void submit(CompletionService<Result> service, List<Future<Result>> futures, Dir dir, List<String> terms) {
+    futures.add(service.submit(new PathsTask(dir)));
+    futures.add(service.submit(new MotifsTask(dir, terms)));
+  }
+
+  /**
+   * Wait for the next result of a crawl. Failures to fetch a directory are
+   * returned as results; only an interruption or an unexpected error is
+   * thrown.
+   *
+   * @param service the service
+   * @return the result
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static Result take(CompletionService<Result> service) throws IOException {
+    try {
+      return service.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+
+      throw new InterruptedIOException("Motif crawl interrupted");
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Attach an off screen directory node, and any of its ancestors that are
+   * also off screen, to the tree. The ancestors are joined up directly and
+   * only the highest of them is added to a node that is already in the tree.
+   *
+   * @param dir the dir
+   */
+  private static void attach(Dir dir) {
+    while (!dir.mParent.mAttached) {
+      dir.mParent.mNode.addChild(dir.mNode);
+      dir.mAttached = true;
 
-        resultStack.push(sampleIds);
+      dir = dir.mParent;
+    }
 
-        break;
-      case AND:
-        op2 = resultStack.pop();
-        op1 = resultStack.pop();
+    addChildren(dir.mParent.mNode, Collections.singletonList(dir.mNode));
 
-        sampleIds = CollectionUtils.intersect(op1, op2);
+    dir.mAttached = true;
+  }
 
-        resultStack.push(sampleIds);
+  /**
+   * Search the motifs of a path for any of a list of terms, using the index
+   * kept with its stored motifs.
+   *
+   * @param path  the path
+   * @param terms the terms
+   * @return the motifs matching at least one term or all motifs if there are
+   *         no terms.
+   * @throws IOException    Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  public List<Motif> search(Path path, List<String> terms) throws IOException, ParseException {
+    MotifStore.Entry entry = getEntry(path);
 
-        break;
-      case OR:
-        op2 = resultStack.pop();
-        op1 = resultStack.pop();
+    if (entry == null) {
+      return new ArrayList<Motif>();
+    }
 
-        sampleIds = CollectionUtils.union(op1, op2);
+    if (terms.size() == 0) {
+      return entry.toMotifs();
+    }
 
-        resultStack.push(sampleIds);
+    MotifIndex index = entry.getIndex();
 
-        break;
-      case XOR:
-      case NAND:
-        op2 = resultStack.pop();
-        op1 = resultStack.pop();
+    BitSet found = new BitSet(index.size());
 
-        sampleIds = CollectionUtils.xor(op1, op2);
+    for (String term : terms) {
+      found.or(index.match(term));
+    }
 
-        resultStack.push(sampleIds);
+    return index.getMotifs(found);
+  }
 
-        break;
-      default:
-        break;
-      }
+  /**
+   * Search the motifs of a path. The index of each path is built once and
+   * kept with its stored motifs so repeated searches reuse it.
+   *
+   * @param path        the path
+   * @param searchStack the search stack
+   * @return the list
+   * @throws IOException    Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  public List<Motif> search(Path path, Deque<SearchStackElement> searchStack) throws IOException, ParseException {
+    MotifStore.Entry entry = getEntry(path);
+
+    if (entry == null) {
+      return new ArrayList<Motif>();
+    }
+
+    if (searchStack.size() == 0) {
+      return entry.toMotifs();
     }
 
-    // The final result is on the top of result stack
-    return resultStack.pop(); // ArrayUtils.sort(sampleIds);
+    MotifIndex index = entry.getIndex();
+
+    return index.getMotifs(index.search(searchStack));
   }
 
   /**
@@ -248,19 +646,10 @@ public class MotifsWeb extends MotifDataSource {
     List<Path> paths = new ArrayList<Path>();
 
     try {
-
       URL url = mPathsUrl.param("p", root.toString()).toURL();
 
-      System.err.println(url);
-
-      Json json = mParser.parse(url);
-
-      for (int i = 0; i < json.size(); ++i) {
-        Json pathJson = json.get(i);
-
-        Path path = new Path(pathJson.get("path").getString());
-
-        paths.add(path);
+      for (String path : fetchPaths(url)) {
+        paths.add(new Path(path));
       }
     } catch (MalformedURLException e) {
       e.printStackTrace();
@@ -278,47 +667,188 @@ public class MotifsWeb extends MotifDataSource {
    * @throws ParseException the parse exception
    */
   public List<Motif> getMotifs(Path path) throws IOException, ParseException {
-    List<Motif> motifs = new ArrayList<Motif>();
+    MotifStore.Entry entry = getEntry(path);
+
+    if (entry == null) {
+      return new ArrayList<Motif>();
+    }
+
+    return entry.toMotifs();
+  }
+
+  /**
+   * Gets the stored motifs of a path.
+   *
+   * @param path the path
+   * @return the entry or null if the path is not valid.
+   * @throws IOException    Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  private MotifStore.Entry getEntry(Path path) throws IOException, ParseException {
+    try {
+      return fetchMotifs(mMotifsUrl.param("p", path.toString()).toURL());
+    } catch (MalformedURLException e) {
+      e.printStackTrace();
+    }
+
+    return null;
+  }
+
+  /**
+   * Fetch a list of paths, from the local store if it is fresh and
+   * otherwise by revalidating it with the server. Falls back to the local
+   * store if the server cannot be reached.
+   *
+   * @param url the url
+   * @return the list
+   * @throws IOException    Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  private List<String> fetchPaths(URL url) throws IOException, ParseException {
+    String key = url.toString();
+
+    MotifStore.Entry cached = mStore.read(key);
+
+    if (isFresh(cached)) {
+      return cached.getPaths();
+    }
 
     try {
-      URLPath url = mMotifsUrl.param("p", path.toString());
+      HttpURLConnection connection = open(url, cached);
+
+      try {
+        if (cached != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+          try {
+            mStore.touch(key);
+          } catch (IOException e) {
+            // Only the record of the revalidation is lost
+            e.printStackTrace();
+          }
+
+          return cached.getPaths();
+        }
+
+        List<String> paths;
+
+        InputStream in = connection.getInputStream();
+
+        try {
+          paths = MotifJsonReader.readPaths(in);
+        } finally {
+          in.close();
+        }
+
+        mStore.writePaths(key, connection.getHeaderField("ETag"), connection.getLastModified(), paths);
 
-      System.err.println(url);
+        return paths;
+      } finally {
+        connection.disconnect();
+      }
+    } catch (IOException e) {
+      if (cached != null) {
+        // Server is unavailable so work offline
+        return cached.getPaths();
+      }
 
-      Json json = mParser.parse(url);
+      throw e;
+    }
+  }
 
-      for (int i = 0; i < json.size(); ++i) {
-        Json motifJson = json.get(i);
+  /**
+   * Fetch a list of motifs, from the local store if it is fresh and
+   * otherwise by revalidating it with the server. Falls back to the local
+   * store if the server cannot be reached.
+   *
+   * @param url the url
+   * @return the entry
+   * @throws IOException    Signals that an I/O exception has occurred.
+   * @throws ParseException the parse exception
+   */
+  private MotifStore.Entry fetchMotifs(URL url) throws IOException, ParseException {
+    String key = url.toString();
 
-        Json countsJson = motifJson.get("counts");
+    MotifStore.Entry cached = mStore.read(key);
 
-        // System.err.println(countsJson.toString());
+    if (isFresh(cached)) {
+      return cached;
+    }
 
-        int l = countsJson.size();
+    try {
+      HttpURLConnection connection = open(url, cached);
+
+      try {
+        if (cached != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+          try {
+            mStore.touch(key);
+          } catch (IOException e) {
+            // Only the record of the revalidation is lost
+            e.printStackTrace();
+          }
 
-        List<BaseCounts> counts = new ArrayList<BaseCounts>(l);
+          return cached;
+        }
 
-        for (int j = 0; j < l; ++j) {
-          Json countJson = countsJson.get(j);
-          // Convert the values of each column to percentages
+        List<MotifMatrix> motifs;
 
-          double af = countJson.get("a").getDouble();
-          double cf = countJson.get("c").getDouble();
-          double gf = countJson.get("g").getDouble();
-          double tf = countJson.get("t").getDouble();
+        // Decode the counts as the response arrives rather than buffering
+        // the whole body and building a json tree first
+        InputStream in = connection.getInputStream();
 
-          counts.add(new BaseCounts(af, cf, gf, tf, true));
+        try {
+          motifs = MotifJsonReader.readMotifs(in);
+        } finally {
+          in.close();
         }
 
-        Motif motif = new Motif(motifJson.get("id").getString(), motifJson.get("name").getString(),
-            motifJson.get("gene").getString(), motifJson.get("database").getString(), counts);
+        return mStore.writeMotifs(key, connection.getHeaderField("ETag"), connection.getLastModified(), motifs);
+      } finally {
+        connection.disconnect();
+      }
+    } catch (IOException e) {
+      if (cached != null) {
+        // Server is unavailable so work offline
+        return cached;
+      }
+
+      throw e;
+    }
+  }
 
-        motifs.add(motif);
+  /**
+   * Returns true if a stored entry was checked recently enough to be used
+   * without asking the server.
+   *
+   * @param entry the entry
+   * @return true, if is fresh
+   */
+  private boolean isFresh(MotifStore.Entry entry) {
+    return entry != null && System.currentTimeMillis() - entry.getChecked() < mMaxAge;
+  }
+
+  /**
+   * Open a conditional request using the validators of a stored entry.
+   *
+   * @param url    the url
+   * @param cached the cached entry or null.
+   * @return the http url connection
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private static HttpURLConnection open(URL url, MotifStore.Entry cached) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+    connection.setConnectTimeout(CONNECT_TIMEOUT);
+    connection.setReadTimeout(READ_TIMEOUT);
+
+    if (cached != null) {
+      if (cached.getEtag() != null) {
+        connection.setRequestProperty("If-None-Match", cached.getEtag());
+      }
+
+      if (cached.getLastModified() > 0) {
+        connection.setIfModifiedSince(cached.getLastModified());
       }
-    } catch (MalformedURLException e) {
-      e.printStackTrace();
     }
 
-    return motifs;
+    return connection;
   }
 }
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2016, Antony Holmes
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  1. Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *  2. Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *  3. Neither the name of copyright holder nor the names of its contributors 
+ *     may be used to endorse or promote products derived from this software 
+ *     without specific prior written permission. 
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" 
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE 
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE 
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE 
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF 
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS 
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN 
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.jebtk.bioinformatics.ui.motifs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.jebtk.bioinformatics.motifs.Motif;
+import org.jebtk.core.path.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks that motif responses are revalidated with the server, kept when
+ * the server is offline and still returned when they cannot be stored.
+ * 
+ * @author Antony Holmes
+ *
+ */
+public class MotifsWebTest {
+
+  /**
+   * The constant ETAG.
+   */
+  private static final String ETAG = "\"v1\"";
+
+  /**
+   * The constant MOTIFS.
+   */
+  private static final byte[] MOTIFS = ("[{\"id\":\"M1\",\"name\":\"BCL6\",\"gene\":\"BCL6\",\"database\":\"test\","
+      + "\"counts\":[{\"a\":1,\"c\":2,\"g\":3,\"t\":4},{\"a\":4,\"c\":3,\"g\":2,\"t\":1}]}]")
+          .getBytes(StandardCharsets.UTF_8);
+
+  /**
+   * Holds the stores and is deleted after each test.
+   */
+  @Rule
+  public TemporaryFolder mFolder = new TemporaryFolder();
+
+  /**
+   * The member server.
+   */
+  private HttpServer mServer;
+
+  /**
+   * The member handler.
+   */
+  private MotifsHandler mHandler;
+
+  /**
+   * The member dir.
+   */
+  private java.nio.file.Path mDir;
+
+  /**
+   * Serves a fixed list of motifs with an ETag and counts the responses.
+   */
+  private static class MotifsHandler implements HttpHandler {
+
+    /**
+     * The number of full responses.
+     */
+    private int mOk = 0;
+
+    /**
+     * The number of not modified responses.
+     */
+    private int mNotModified = 0;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.
+     * HttpExchange)
+     */
+    @Override
+    public synchronized void handle(HttpExchange exchange) throws IOException {
+      try {
+        if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+          ++mNotModified;
+
+          exchange.sendResponseHeaders(304, -1);
+        } else {
+          ++mOk;
+
+          exchange.getResponseHeaders().set("ETag", ETAG);
+          exchange.sendResponseHeaders(200, MOTIFS.length);
+
+          OutputStream out = exchange.getResponseBody();
+
+          try {
+            out.write(MOTIFS);
+          } finally {
+            out.close();
+          }
+        }
+      } finally {
+        exchange.close();
+      }
+    }
+  }
+
+  /**
+   * Start a local server.
+   *
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  @Before
+  public void setUp() throws IOException {
+    mHandler = new MotifsHandler();
+
+    mServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    mServer.createContext("/", mHandler);
+    mServer.start();
+
+    mDir = mFolder.newFolder("motifs").toPath();
+  }
+
+  /**
+   * Stop the server.
+   */
+  @After
+  public void tearDown() {
+    mServer.stop(0);
+  }
+
+  /**
+   * Stale entries are revalidated and reused when the server says they have
+   * not changed.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void revalidate() throws Exception {
+    MotifsWeb web = new MotifsWeb(url(), new MotifStore(mDir), 0);
+
+    assertMotifs(web.getMotifs(new Path("/test")));
+    assertMotifs(web.getMotifs(new Path("/test")));
+
+    assertEquals(1, mHandler.mOk);
+    assertEquals(1, mHandler.mNotModified);
+  }
+
+  /**
+   * Fresh entries are used without asking the server.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void fresh() throws Exception {
+    MotifsWeb web = new MotifsWeb(url(), new MotifStore(mDir), 60000);
+
+    assertMotifs(web.getMotifs(new Path("/test")));
+    assertMotifs(web.getMotifs(new Path("/test")));
+
+    assertEquals(1, mHandler.mOk);
+    assertEquals(0, mHandler.mNotModified);
+  }
+
+  /**
+   * Stored entries are used when the server cannot be reached, including by
+   * a new store reading them back from disk.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void offline() throws Exception {
+    URL url = url();
+
+    assertMotifs(new MotifsWeb(url, new MotifStore(mDir), 0).getMotifs(new Path("/test")));
+
+    mServer.stop(0);
+
+    assertMotifs(new MotifsWeb(url, new MotifStore(mDir), 0).getMotifs(new Path("/test")));
+  }
+
+  /**
+   * A response that cannot be written to disk is still returned.
+   *
+   * @throws Exception the exception
+   */
+  @Test
+  public void unwritable() throws Exception {
+    // A file where the store directory should be means nothing can be
+    // written
+    java.nio.file.Path file = mFolder.newFile("motifs.tmp").toPath();
+
+    MotifsWeb web = new MotifsWeb(url(), new MotifStore(file), 0);
+
+    assertMotifs(web.getMotifs(new Path("/test")));
+
+    assertEquals(1, mHandler.mOk);
+  }
+
+  /**
+   * The url of the server.
+   *
+   * @return the url
+   * @throws IOException Signals that an I/O exception has occurred.
+   */
+  private URL url() throws IOException {
+    return new URL("http://localhost:" + mServer.getAddress().getPort() + "/");
+  }
+
+  /**
+   * Check the motifs served were decoded.
+   *
+   * @param motifs the motifs
+   */
+  private static void assertMotifs(List<Motif> motifs) {
+    assertEquals(1, motifs.size());
+    assertEquals("BCL6", motifs.get(0).getName());
+    assertEquals(2, motifs.get(0).getBaseCount());
+  }
+}